@@ -0,0 +1,46 @@
+package org.artifactly.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.artifactly.service.dao.PageableResults;
+import org.artifactly.service.pojo.Artifact;
+import org.artifactly.service.pojo.Location;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArtifactServiceBenchmark extends DatastoreState {
+
+	private static final long PAGE_SIZE = 20;
+
+	@Benchmark
+	public Artifact create() {
+
+		operation();
+		return artifactService.create(newArtifact(), newLocation());
+	}
+
+	@Benchmark
+	public PageableResults<Artifact> getPage() {
+
+		operation();
+		return artifactService.get(null, PAGE_SIZE);
+	}
+
+	@Benchmark
+	public PageableResults<Artifact> getAtCoordinate() {
+
+		operation();
+		Location location = randomLocation();
+		return artifactService.get(location.getLatitude(), location.getLongitude(), null, PAGE_SIZE);
+	}
+}
@@ -0,0 +1,201 @@
+package org.artifactly.benchmark;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.artifactly.service.dao.ArtifactService;
+import org.artifactly.service.dao.ArtifactServiceImpl;
+import org.artifactly.service.dao.ArtifactWriter;
+import org.artifactly.service.dao.EntityCache;
+import org.artifactly.service.dao.EntityMapper;
+import org.artifactly.service.dao.GeoCellQuery;
+import org.artifactly.service.dao.LocationAliases;
+import org.artifactly.service.dao.LocationArtifacts;
+import org.artifactly.service.dao.LocationMembership;
+import org.artifactly.service.dao.LocationService;
+import org.artifactly.service.dao.LocationServiceImpl;
+import org.artifactly.service.dao.Manager;
+import org.artifactly.service.dao.ManagerImpl;
+import org.artifactly.service.metrics.RpcCounter;
+import org.artifactly.service.pojo.Artifact;
+import org.artifactly.service.pojo.Location;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+
+/*
+ * In-memory local datastore filled with the given number of artifacts, shared by
+ * the benchmarks. The datastore calls of the benchmark thread are counted and
+ * reported per operation when the trial ends.
+ */
+@State(Scope.Thread)
+public abstract class DatastoreState {
+
+	private static final int ARTIFACTS_PER_LOCATION = 10;
+	private static final int PUT_BATCH_SIZE = 500;
+
+	// Locations are spread over about 100 km by 100 km
+	private static final double MIN_LATITUDE = 37.0;
+	private static final double MIN_LONGITUDE = -123.0;
+	private static final double SPREAD = 1.0;
+
+	@Param({"1000", "10000", "100000"})
+	public int entities;
+
+	protected ArtifactService artifactService = null;
+	protected LocationService locationService = null;
+	protected List<Location> locations = null;
+	protected Random random = null;
+
+	private LocalServiceTestHelper helper = null;
+	private long operations = 0;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+
+		// Read model tasks are enqueued with every create, the benchmark does not run them
+		helper = new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true),
+											new LocalTaskQueueTestConfig().setDisableAutoTaskExecution(true));
+		helper.setUp();
+		RpcCounter.install();
+
+		// The uncached implementations, as bound with the default "jdo" configuration
+		Manager manager = new ManagerImpl();
+		EntityCache entityCache = new EntityCache(manager, 10000, 3600);
+		LocationAliases locationAliases = new LocationAliases(manager);
+		locationService = new LocationServiceImpl(manager, new GeoCellQuery(manager, entityCache), entityCache, locationAliases);
+		artifactService = new ArtifactServiceImpl(manager, locationService, new ArtifactWriter(manager, entityCache, new LocationArtifacts(manager), locationAliases), new LocationArtifacts(manager), new LocationMembership(manager), entityCache);
+
+		random = new Random(42);
+		locations = populate(manager.getDatastoreService());
+
+		RpcCounter.reset();
+		operations = 0;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+
+		if(0 < operations) {
+
+			System.out.println(String.format("%s with %d entities: %.2f datastore RPCs/op, %.2f memcache RPCs/op over %d ops",
+											 getBenchmarkName(),
+											 entities,
+											 (double) RpcCounter.getDatastoreCalls() / operations,
+											 (double) RpcCounter.getMemcacheCalls() / operations,
+											 operations));
+		}
+
+		RpcCounter.uninstall();
+		helper.tearDown();
+	}
+
+	/*
+	 * Counts an operation of the benchmark for the RPCs per operation
+	 */
+	protected void operation() {
+
+		operations++;
+	}
+
+	protected Location randomLocation() {
+
+		return locations.get(random.nextInt(locations.size()));
+	}
+
+	protected Location newLocation() {
+
+		return new Location(MIN_LATITUDE + random.nextDouble() * SPREAD, MIN_LONGITUDE + random.nextDouble() * SPREAD);
+	}
+
+	protected Artifact newArtifact() {
+
+		return new Artifact(null, "artifact-" + random.nextInt(), new Date(), random.nextBoolean());
+	}
+
+	/*
+	 * Returns the name of the benchmark class, JMH runs generated subclasses of it
+	 */
+	private String getBenchmarkName() {
+
+		Class<?> type = getClass();
+
+		while(DatastoreState.class != type.getSuperclass()) {
+
+			type = type.getSuperclass();
+		}
+
+		return type.getSimpleName();
+	}
+
+	/*
+	 * Writes the entities with batch puts the way the artifact writer lays them out,
+	 * which is much faster than creating them one by one through the services
+	 */
+	private List<Location> populate(DatastoreService datastoreService) {
+
+		int locationCount = Math.max(1, entities / ARTIFACTS_PER_LOCATION);
+		Iterator<Key> artifactKeys = datastoreService.allocateIds(EntityMapper.ARTIFACT_KIND, entities).iterator();
+
+		List<Location> populated = new ArrayList<Location>(locationCount);
+		List<Entity> batch = new ArrayList<Entity>(PUT_BATCH_SIZE);
+
+		for(int index = 0; index < locationCount; index++) {
+
+			Location location = newLocation();
+			location.setKey(EntityMapper.locationKey(location.getLatitude(), location.getLongitude()));
+
+			Entity[] shards = new Entity[LocationArtifacts.SHARDS];
+
+			for(int count = 0; count < ARTIFACTS_PER_LOCATION && artifactKeys.hasNext(); count++) {
+
+				Artifact artifact = newArtifact();
+				artifact.setKey(artifactKeys.next());
+				artifact.getLocations().add(location.getKey());
+
+				int shard = count % LocationArtifacts.SHARDS;
+				shards[shard] = LocationArtifacts.add(shards[shard], location.getKey(), shard, artifact);
+				batch.add(EntityMapper.toEntity(artifact));
+				batch.add(LocationMembership.toEntity(artifact, location));
+			}
+
+			batch.add(EntityMapper.toEntity(location));
+
+			for(Entity shard : shards) {
+
+				if(null != shard) {
+
+					batch.add(shard);
+				}
+			}
+
+			if(batch.size() >= PUT_BATCH_SIZE - 3 * ARTIFACTS_PER_LOCATION) {
+
+				datastoreService.put(batch);
+				batch.clear();
+			}
+
+			populated.add(location);
+		}
+
+		if(!batch.isEmpty()) {
+
+			datastoreService.put(batch);
+		}
+
+		return populated;
+	}
+}
@@ -0,0 +1,28 @@
+package org.artifactly.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.artifactly.service.pojo.Location;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LocationServiceBenchmark extends DatastoreState {
+
+	@Benchmark
+	public Location getAtCoordinate() {
+
+		operation();
+		Location location = randomLocation();
+		return locationService.get(location.getLatitude(), location.getLongitude());
+	}
+}
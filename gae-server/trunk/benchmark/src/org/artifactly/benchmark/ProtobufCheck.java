@@ -0,0 +1,306 @@
+package org.artifactly.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.artifactly.service.dao.Changes;
+import org.artifactly.service.dao.PageableResults;
+import org.artifactly.service.dao.Tombstone;
+import org.artifactly.service.pojo.Artifact;
+import org.artifactly.service.pojo.Location;
+
+import com.google.appengine.api.datastore.Key;
+import com.google.protobuf.CodedInputStream;
+
+/*
+ * Decodes the output of ProtobufEncoding against the messages of artifactly.proto and
+ * compares it with the encoded values. Every field must have the number and wire type
+ * of the schema, and every nested message must end exactly at its length, so a size
+ * computed apart from the code writing the message is caught as well.
+ */
+final class ProtobufCheck {
+
+	private static final int VARINT = 0;
+	private static final int FIXED64 = 1;
+	private static final int LENGTH_DELIMITED = 2;
+
+	// Field types by field number, per message of artifactly.proto
+	private static final Map<String, Map<Integer, String>> MESSAGES = new HashMap<String, Map<Integer, String>>();
+
+	static {
+
+		message("Key", "string", "int64", "string", "Key");
+		message("Location", "Key", "double", "double", "int64");
+		message("Artifact", "Key", "string", "string", "int64", "int64", "bool", "Key", "int64");
+		message("Tombstone", "Key", "int64");
+		message("Page", "Artifact", "Location", "string");
+		message("Changes", "Artifact", "Location", "Tombstone", "string");
+	}
+
+	private ProtobufCheck() {
+
+	}
+
+	/*
+	 * Throws an IllegalStateException if the bytes are not the encoding of the value
+	 */
+	static void check(Object value, byte[] bytes) throws IOException {
+
+		if(value instanceof Changes) {
+
+			Changes changes = (Changes) value;
+			Message message = decode(bytes, "Changes");
+
+			checkArtifacts(changes.getArtifacts(), message.messages(1));
+			checkLocations(changes.getLocations(), message.messages(2));
+			checkEquals("deleted", changes.getDeleted().size(), message.messages(3).size());
+
+			Iterator<Message> deleted = message.messages(3).iterator();
+
+			for(Tombstone tombstone : changes.getDeleted()) {
+
+				Message encoded = deleted.next();
+				checkKey(tombstone.getKey(), encoded.message(1));
+				checkEquals("tombstone version", tombstone.getVersion(), encoded.value(2));
+			}
+
+			checkEquals("token", changes.getToken(), message.value(4));
+		}
+		else if(value instanceof PageableResults<?>) {
+
+			PageableResults<?> pageableResults = (PageableResults<?>) value;
+			Message message = decode(bytes, "Page");
+
+			checkElements(pageableResults.getResults(), message);
+			checkEquals("offset", pageableResults.getOffset(), message.value(3));
+		}
+		else {
+
+			checkElements((List<?>) value, decode(bytes, "Page"));
+		}
+	}
+
+	private static Message decode(byte[] bytes, String type) throws IOException {
+
+		CodedInputStream input = CodedInputStream.newInstance(bytes);
+
+		// A nested length past the end of the payload fails instead of ending the message early
+		input.pushLimit(bytes.length);
+		Message message = decode(input, type);
+
+		if(!input.isAtEnd()) {
+
+			throw new IllegalStateException(type + " ends before the payload");
+		}
+
+		return message;
+	}
+
+	private static Message decode(CodedInputStream input, String type) throws IOException {
+
+		Map<Integer, String> fields = MESSAGES.get(type);
+		Message message = new Message();
+
+		for(int tag = input.readTag(); 0 != tag; tag = input.readTag()) {
+
+			int number = tag >>> 3;
+			String fieldType = fields.get(number);
+
+			if(null == fieldType || (tag & 7) != wireType(fieldType)) {
+
+				throw new IllegalStateException(type + " has no field " + number + " of wire type " + (tag & 7));
+			}
+
+			Object value = null;
+
+			if("string".equals(fieldType)) {
+
+				value = input.readString();
+			}
+			else if("int64".equals(fieldType)) {
+
+				value = input.readInt64();
+			}
+			else if("double".equals(fieldType)) {
+
+				value = input.readDouble();
+			}
+			else if("bool".equals(fieldType)) {
+
+				value = input.readBool();
+			}
+			else {
+
+				int limit = input.pushLimit(input.readRawVarint32());
+				value = decode(input, fieldType);
+
+				if(!input.isAtEnd()) {
+
+					throw new IllegalStateException(fieldType + " ends before its length");
+				}
+
+				input.popLimit(limit);
+			}
+
+			message.add(number, value);
+		}
+
+		return message;
+	}
+
+	private static void checkElements(List<?> elements, Message message) {
+
+		List<Artifact> artifacts = new ArrayList<Artifact>();
+		List<Location> locations = new ArrayList<Location>();
+
+		for(Object element : elements) {
+
+			if(element instanceof Artifact) {
+
+				artifacts.add((Artifact) element);
+			}
+			else {
+
+				locations.add((Location) element);
+			}
+		}
+
+		checkArtifacts(artifacts, message.messages(1));
+		checkLocations(locations, message.messages(2));
+	}
+
+	private static void checkArtifacts(List<Artifact> artifacts, List<Message> messages) {
+
+		checkEquals("artifacts", null == artifacts ? 0 : artifacts.size(), messages.size());
+
+		for(int index = 0; index < messages.size(); index++) {
+
+			Artifact artifact = artifacts.get(index);
+			Message message = messages.get(index);
+
+			checkKey(artifact.getKey(), message.message(1));
+			checkEquals("name", artifact.getName(), message.value(2));
+			checkEquals("creator", null == artifact.getCreator() ? null : artifact.getCreator().getEmail(), message.value(3));
+			checkEquals("creation date", null == artifact.getCreationDate() ? null : artifact.getCreationDate().getTime(), message.value(4));
+			checkEquals("expiration date", null == artifact.getExpirationDate() ? null : artifact.getExpirationDate().getTime(), message.value(5));
+			checkEquals("is public", artifact.getIsPublic(), message.value(6));
+			checkEquals("artifact locations", artifact.getLocations().size(), message.messages(7).size());
+
+			Iterator<Message> locationKeys = message.messages(7).iterator();
+
+			for(Key locationKey : artifact.getLocations()) {
+
+				checkKey(locationKey, locationKeys.next());
+			}
+
+			checkEquals("artifact version", artifact.getVersion(), message.value(8));
+		}
+	}
+
+	private static void checkLocations(List<Location> locations, List<Message> messages) {
+
+		checkEquals("locations", null == locations ? 0 : locations.size(), messages.size());
+
+		for(int index = 0; index < messages.size(); index++) {
+
+			Location location = locations.get(index);
+			Message message = messages.get(index);
+
+			checkKey(location.getKey(), message.message(1));
+			checkEquals("latitude", location.getLatitude(), message.value(2));
+			checkEquals("longitude", location.getLongitude(), message.value(3));
+			checkEquals("location version", location.getVersion(), message.value(4));
+		}
+	}
+
+	private static void checkKey(Key key, Message message) {
+
+		if(null == key || null == message) {
+
+			checkEquals("key", null == key, null == message);
+			return;
+		}
+
+		checkEquals("kind", key.getKind(), message.value(1));
+		checkEquals("id", 0 == key.getId() ? null : key.getId(), message.value(2));
+		checkEquals("key name", key.getName(), message.value(3));
+		checkKey(key.getParent(), message.message(4));
+	}
+
+	private static void checkEquals(String field, Object expected, Object actual) {
+
+		if(null == expected ? null != actual : !expected.equals(actual)) {
+
+			throw new IllegalStateException(field + " is encoded as " + actual + " instead of " + expected);
+		}
+	}
+
+	private static int wireType(String fieldType) {
+
+		if("int64".equals(fieldType) || "bool".equals(fieldType)) {
+
+			return VARINT;
+		}
+
+		return "double".equals(fieldType) ? FIXED64 : LENGTH_DELIMITED;
+	}
+
+	/*
+	 * Declares a message with the types of its fields, numbered from 1
+	 */
+	private static void message(String type, String... fieldTypes) {
+
+		Map<Integer, String> fields = new HashMap<Integer, String>();
+
+		for(int index = 0; index < fieldTypes.length; index++) {
+
+			fields.put(index + 1, fieldTypes[index]);
+		}
+
+		MESSAGES.put(type, fields);
+	}
+
+	/*
+	 * Values of a decoded message by field number, in the order of the payload
+	 */
+	private static class Message {
+
+		private Map<Integer, List<Object>> fields = new HashMap<Integer, List<Object>>();
+
+		private void add(int number, Object value) {
+
+			List<Object> values = fields.get(number);
+
+			if(null == values) {
+
+				values = new ArrayList<Object>();
+				fields.put(number, values);
+			}
+
+			values.add(value);
+		}
+
+		private Object value(int number) {
+
+			List<Object> values = fields.get(number);
+			return null == values ? null : values.get(values.size() - 1);
+		}
+
+		private Message message(int number) {
+
+			return (Message) value(number);
+		}
+
+		@SuppressWarnings("unchecked")
+		private List<Message> messages(int number) {
+
+			List<?> values = fields.get(number);
+			return null == values ? Collections.<Message>emptyList() : (List<Message>) values;
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package org.artifactly.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.artifactly.service.dao.Changes;
+import org.artifactly.service.dao.EntityMapper;
+import org.artifactly.service.dao.PageableResults;
+import org.artifactly.service.dao.Tombstone;
+import org.artifactly.service.pojo.Artifact;
+import org.artifactly.service.pojo.Location;
+import org.artifactly.service.rest.ProtobufEncoding;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.users.User;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+
+/*
+ * Compares the JSON and the protocol buffer encoding of the payloads: a page of
+ * artifacts, a list of locations and a batch of changes. The time per encoding is
+ * measured, the sizes on the wire, plain and gzipped, are printed at the start,
+ * after the protocol buffer encoding of each payload is decoded and checked.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+	private static final int PAGE_SIZE = 20;
+	private static final int LOCATIONS = 50;
+
+	// The JSON provider of Jersey maps with a default object mapper
+	private ObjectMapper objectMapper = new ObjectMapper();
+	private ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+	private PageableResults<Artifact> page = null;
+	private List<Location> locations = null;
+	private Changes changes = null;
+
+	// Keys are created in the environment of an application
+	private LocalServiceTestHelper helper = null;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+
+		helper = new LocalServiceTestHelper();
+		helper.setUp();
+
+		Random random = new Random(42);
+		User creator = new User("someone@example.com", "gmail.com", "185804764220139124118");
+
+		locations = new ArrayList<Location>(LOCATIONS);
+
+		for(int index = 0; index < LOCATIONS; index++) {
+
+			Location location = new Location(37.0 + random.nextDouble(), -123.0 + random.nextDouble());
+			location.setKey(EntityMapper.locationKey(location.getLatitude(), location.getLongitude()));
+			location.setVersion(1292000000000000L + index);
+			locations.add(location);
+		}
+
+		List<Artifact> artifacts = new ArrayList<Artifact>(PAGE_SIZE);
+
+		for(int index = 0; index < PAGE_SIZE; index++) {
+
+			Artifact artifact = new Artifact(creator, "artifact-" + random.nextInt(), new Date(), random.nextBoolean());
+			artifact.setKey(KeyFactory.createKey(EntityMapper.ARTIFACT_KIND, 1000 + index));
+			artifact.getLocations().add(locations.get(index).getKey());
+			artifact.setVersion(1292000000000000L + index);
+			artifacts.add(artifact);
+		}
+
+		page = new PageableResults<Artifact>();
+		page.setResults(artifacts);
+		page.setOffset("1292000000000.E9oBaGpGagR0ZXN0cj4LEiwKABoIQXJ0aWZhY3QjMANyGggHGglleHBpcmVzQXQgACoJCOD4");
+
+		changes = new Changes();
+		changes.setArtifacts(artifacts);
+		changes.setLocations(locations.subList(0, PAGE_SIZE));
+		changes.getDeleted().add(new Tombstone(KeyFactory.createKey(EntityMapper.ARTIFACT_KIND, 999), 1292000000000100L));
+		changes.setToken("1292000000000100");
+
+		report("page of " + PAGE_SIZE + " artifacts", page);
+		report(LOCATIONS + " locations", locations);
+		report("changes", changes);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+
+		helper.tearDown();
+	}
+
+	@Benchmark
+	public int jsonPage() throws IOException {
+
+		return json(page);
+	}
+
+	@Benchmark
+	public int protobufPage() throws IOException {
+
+		return protobuf(page);
+	}
+
+	@Benchmark
+	public int jsonLocations() throws IOException {
+
+		return json(locations);
+	}
+
+	@Benchmark
+	public int protobufLocations() throws IOException {
+
+		return protobuf(locations);
+	}
+
+	@Benchmark
+	public int jsonChanges() throws IOException {
+
+		return json(changes);
+	}
+
+	@Benchmark
+	public int protobufChanges() throws IOException {
+
+		return protobuf(changes);
+	}
+
+	private int json(Object value) throws IOException {
+
+		output.reset();
+		objectMapper.writeValue(output, value);
+		return output.size();
+	}
+
+	private int protobuf(Object value) throws IOException {
+
+		output.reset();
+		ProtobufEncoding.write(value, output);
+		return output.size();
+	}
+
+	private void report(String payload, Object value) throws IOException {
+
+		int jsonSize = json(value);
+		int jsonGzipSize = gzip(output.toByteArray());
+		int protobufSize = protobuf(value);
+		int protobufGzipSize = gzip(output.toByteArray());
+
+		// The encoder is written by hand, its output is checked against the schema before it is measured
+		ProtobufCheck.check(value, output.toByteArray());
+
+		System.out.println(String.format("%s: JSON %d bytes (%d gzipped), protobuf %d bytes (%d gzipped)",
+										 payload, jsonSize, jsonGzipSize, protobufSize, protobufGzipSize));
+	}
+
+	private int gzip(byte[] bytes) throws IOException {
+
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		GZIPOutputStream gzipOutput = new GZIPOutputStream(compressed);
+		gzipOutput.write(bytes);
+		gzipOutput.close();
+
+		return compressed.size();
+	}
+}
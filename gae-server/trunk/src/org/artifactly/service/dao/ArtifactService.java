@@ -11,7 +11,15 @@ public interface ArtifactService {
 	
 	public List<Artifact> getAll();
 	
+	public Iterable<Artifact> iterateAll();
+	
 	public PageableResults<Artifact> get(String offset, long limit);
 	
-	public List<Artifact> get(double latitude, double longitude);
+	public PageableResults<Artifact> getCreatedBy(String creatorId, String offset, long limit);
+	
+	public PageableResults<Artifact> get(double latitude, double longitude, String offset, long limit);
+	
+	public PageableResults<Artifact> get(double latitude, double longitude, double radius, String offset, long limit);
+	
+	public PageableResults<Artifact> getAtLocations(List<Location> locations, String offset, long limit);
 }
@@ -1,5 +1,8 @@
 package org.artifactly.service.dao;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -8,76 +11,62 @@ import javax.jdo.PersistenceManager;
 import javax.jdo.PersistenceManagerFactory;
 import javax.jdo.Query;
 
-import org.artifactly.service.ioc.ServiceModule;
 import org.artifactly.service.pojo.Artifact;
 import org.artifactly.service.pojo.Location;
 import org.datanucleus.store.appengine.query.JDOCursorHelper;
 
 import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.Key;
-import com.google.inject.Guice;
 import com.google.inject.Inject;
-import com.google.inject.Injector;
 
 public class ArtifactServiceImpl implements ArtifactService {
 
 	private PersistenceManagerFactory persistenceManagerFactory = null;
+	private ArtifactWriter artifactWriter = null;
 	private LocationService locationService = null;
-	private Injector injector = Guice.createInjector(new ServiceModule());
+	private LocationPages locationPages = null;
 	private static final String ZERO_OFFSET = "0";
 	private static final int ZERO = 0;
+	private static final long BATCH_SIZE = 100;
 	
 
 	@Inject
-	public ArtifactServiceImpl() {
+	public ArtifactServiceImpl(Manager manager,
+							   LocationService locationService,
+							   ArtifactWriter artifactWriter,
+							   LocationArtifacts locationArtifacts,
+							   LocationMembership locationMembership,
+							   EntityCache entityCache) {
 
-		persistenceManagerFactory = injector.getInstance(Manager.class).getFactory();
-		locationService = injector.getInstance(LocationService.class);
-	}
-
-	public Artifact create(Artifact artifact, Location location) {
+		persistenceManagerFactory = manager.getFactory();
+		this.locationService = locationService;
+		this.artifactWriter = artifactWriter;
 
-		// First we check if the location already exists
-		Location existingLocation = locationService.get(location.getLatitude(), location.getLongitude());
-		
-		PersistenceManager persistenceManager = persistenceManagerFactory.getPersistenceManager();
+		locationPages = new LocationPages(locationArtifacts, locationMembership, entityCache) {
 
-		try {
+			@Override
+			protected PageableResults<Artifact> query(Key locationKey, String offset, long limit) {
 
-			if(null == existingLocation) {
-			
-				persistenceManager.makePersistentAll(artifact, location);
-			}
-			else {
-				
-				persistenceManager.makePersistent(artifact);
+				return ArtifactServiceImpl.this.query(locationKey, offset, limit);
 			}
+		};
+	}
 
-		} finally {
+	public Artifact create(Artifact artifact, Location location) {
 
-			persistenceManager.close();
-		}
-		
-		if(null == existingLocation) {
-		
-			return setRelations(artifact, location);
-		}
-		else {
-		
-			return setRelations(artifact, existingLocation.getKey());
-		}
+		return artifactWriter.create(artifact, location);
 	}
 
 	public List<Artifact> getAll() {
 
 		PersistenceManager persistenceManager = persistenceManagerFactory.getPersistenceManager();
-		Query query = persistenceManager.newQuery(Artifact.class);
+		Query query = unexpired(persistenceManager);
 
 		List<Artifact> artifacts = null;
 
 		try {
 			
-			artifacts = (List<Artifact>) query.execute();
+			artifacts = (List<Artifact>) query.execute(new Date());
 			persistenceManager.makeTransientAll(artifacts);
 
 		} finally {
@@ -88,17 +77,30 @@ public class ArtifactServiceImpl implements ArtifactService {
 		return artifacts;
 	}
 
+	public Iterable<Artifact> iterateAll() {
+
+		return new PagingIterable<Artifact>(BATCH_SIZE) {
+
+			@Override
+			protected PageableResults<Artifact> fetch(String offset, long limit) {
+
+				return get(offset, limit);
+			}
+		};
+	}
+
 	public PageableResults<Artifact> get(String offset, long limit) {
 
 		PersistenceManager persistenceManager = persistenceManagerFactory.getPersistenceManager();
 
 		PageableResults<Artifact> pageableResults = new PageableResults<Artifact>();
 		
-		Query query = persistenceManager.newQuery(Artifact.class);
+		Query query = unexpired(persistenceManager);
+		Date asOf = Expiry.asOf(offset);
+		Cursor cursor = Expiry.cursor(offset);
 		
-		if(null != offset && !"".equals(offset) && !ZERO_OFFSET.equals(offset)) {
+		if(null != cursor) {
 		
-			Cursor cursor = Cursor.fromWebSafeString(offset);
 	        Map<String, Object> extensionMap = new HashMap<String, Object>();
 	        extensionMap.put(JDOCursorHelper.CURSOR_EXTENSION, cursor);
 	        query.setExtensions(extensionMap);
@@ -110,9 +112,8 @@ public class ArtifactServiceImpl implements ArtifactService {
 		
 		try {
 			
-			artifacts = (List<Artifact>) query.execute();
-			Cursor cursor = JDOCursorHelper.getCursor(artifacts);
-			pageableResults.setOffset(cursor.toWebSafeString());
+			artifacts = (List<Artifact>) query.execute(asOf);
+			pageableResults.setOffset(Expiry.offset(asOf, JDOCursorHelper.getCursor(artifacts)));
 			persistenceManager.makeTransientAll(artifacts);
 			
 		} finally {
@@ -124,79 +125,134 @@ public class ArtifactServiceImpl implements ArtifactService {
 		return pageableResults;
 	}
 
-	@Override
-	public List<Artifact> get(double latitude, double longitude) {
-
-		Location location = locationService.get(latitude, longitude);
-		
-		// TODO: Add error handling in case location is null
+	/*
+	 * Returns a page of the artifacts of the creator, newest first. Expired artifacts
+	 * that have not been swept yet are skipped, as the expiration cannot be filtered
+	 * in a query sorted by creation date, and the query continues until the page is full.
+	 */
+	public PageableResults<Artifact> getCreatedBy(String creatorId, String offset, long limit) {
 		
 		PersistenceManager persistenceManager = persistenceManagerFactory.getPersistenceManager();
-		Query query = persistenceManager.newQuery(Artifact.class);
-		query.setFilter("locations.contains(locationKey)");
-		query.declareParameters("com.google.appengine.api.datastore.Key locationKey");
 		
-		List<Artifact> artifacts = null;
+		Cursor cursor = null != offset && !"".equals(offset) && !ZERO_OFFSET.equals(offset) ? Cursor.fromWebSafeString(offset) : null;
+		List<Artifact> artifacts = new ArrayList<Artifact>();
+		Date asOf = new Date();
+		boolean isExhausted = false;
 		
 		try {
-		
-			artifacts = (List<Artifact>) query.execute(location.getKey());
+			
+			while(!isExhausted && artifacts.size() < limit) {
+				
+				long batchSize = limit - artifacts.size();
+				
+				Query query = persistenceManager.newQuery(Artifact.class);
+				query.setFilter("creatorId == creatorIdParam");
+				query.declareParameters("String creatorIdParam");
+				query.setOrdering("creationDate desc");
+				query.setRange(ZERO, batchSize);
+				
+				if(null != cursor) {
+					
+					Map<String, Object> extensionMap = new HashMap<String, Object>();
+					extensionMap.put(JDOCursorHelper.CURSOR_EXTENSION, cursor);
+					query.setExtensions(extensionMap);
+				}
+				
+				@SuppressWarnings("unchecked")
+				List<Artifact> batch = (List<Artifact>) query.execute(creatorId);
+				
+				for(Artifact artifact : batch) {
+					
+					if(Expiry.expiresAt(artifact.getExpirationDate()).after(asOf)) {
+						
+						artifacts.add(artifact);
+					}
+				}
+				
+				cursor = JDOCursorHelper.getCursor(batch);
+				isExhausted = batch.size() < batchSize;
+			}
+			
 			persistenceManager.makeTransientAll(artifacts);
 			
 		} finally {
 			
 			persistenceManager.close();
 		}
-
-		return artifacts;
+		
+		PageableResults<Artifact> pageableResults = new PageableResults<Artifact>();
+		pageableResults.setResults(artifacts);
+		pageableResults.setOffset(null == cursor ? offset : cursor.toWebSafeString());
+		
+		return pageableResults;
 	}
-	
-	private Artifact setRelations(Artifact artifact, Location location) {
-
-		PersistenceManager persistenceManager = persistenceManagerFactory.getPersistenceManager();
-
-		Artifact persistedArtifact = null;
-		Location persistedLocation = null;
 
-		try {
-
-			persistedArtifact = persistenceManager.getObjectById(Artifact.class, artifact.getKey());
-			persistedLocation = persistenceManager.getObjectById(Location.class, location.getKey());
-			persistedLocation.getArtifacts().add(persistedArtifact.getKey());
-			persistedArtifact.getLocations().add(persistedLocation.getKey());
-			
-			persistenceManager.makeTransient(persistedArtifact);
-
-		} finally {
+	@Override
+	public PageableResults<Artifact> get(double latitude, double longitude, String offset, long limit) {
 
-			persistenceManager.close();
-		}
+		Location location = locationService.get(latitude, longitude);
+		
+		return getAtLocations(null == location ? Collections.<Location>emptyList() : Collections.singletonList(location), offset, limit);
+	}
+	
+	@Override
+	public PageableResults<Artifact> get(double latitude, double longitude, double radius, String offset, long limit) {
 
-		return persistedArtifact;
+		return getAtLocations(locationService.get(latitude, longitude, radius), offset, limit);
 	}
 	
+	public PageableResults<Artifact> getAtLocations(List<Location> locations, String offset, long limit) {
+		
+		return locationPages.get(locations, offset, limit);
+	}
 	
-	private Artifact setRelations(Artifact artifact, Key locationKey) {
-
+	/*
+	 * Returns a page of the unexpired artifacts at a location with a generated id, found
+	 * by the locations of the artifacts
+	 */
+	private PageableResults<Artifact> query(Key locationKey, String offset, long limit) {
+		
 		PersistenceManager persistenceManager = persistenceManagerFactory.getPersistenceManager();
-
-		Artifact persistedArtifact = null;
-		Location persistedLocation = null;
-
+		Query query = persistenceManager.newQuery(Artifact.class);
+		query.setFilter("locations.contains(locationKey) && expiresAt > asOf");
+		query.declareParameters("com.google.appengine.api.datastore.Key locationKey, java.util.Date asOf");
+		
+		Date asOf = Expiry.asOf(offset);
+		Cursor cursor = Expiry.cursor(offset);
+		
+		if(null != cursor) {
+			
+			Map<String, Object> extensionMap = new HashMap<String, Object>();
+			extensionMap.put(JDOCursorHelper.CURSOR_EXTENSION, cursor);
+			query.setExtensions(extensionMap);
+		}
+		
+		query.setRange(ZERO, limit);
+		
+		PageableResults<Artifact> pageableResults = new PageableResults<Artifact>();
+		
 		try {
-
-			persistedArtifact = persistenceManager.getObjectById(Artifact.class, artifact.getKey());
-			persistedLocation = persistenceManager.getObjectById(Location.class, locationKey);
-			persistedLocation.getArtifacts().add(persistedArtifact.getKey());
-			persistedArtifact.getLocations().add(persistedLocation.getKey());
+		
+			@SuppressWarnings("unchecked")
+			List<Artifact> artifacts = (List<Artifact>) query.execute(locationKey, asOf);
+			pageableResults.setOffset(Expiry.offset(asOf, JDOCursorHelper.getCursor(artifacts)));
+			persistenceManager.makeTransientAll(artifacts);
+			pageableResults.setResults(artifacts);
 			
-			persistenceManager.makeTransient(persistedArtifact);
-
 		} finally {
-
+			
 			persistenceManager.close();
 		}
 
-		return persistedArtifact;
+		return pageableResults;
+	}
+	
+	private Query unexpired(PersistenceManager persistenceManager) {
+		
+		Query query = persistenceManager.newQuery(Artifact.class);
+		query.setFilter("expiresAt > asOf");
+		query.declareParameters("java.util.Date asOf");
+		
+		return query;
 	}
 }
@@ -0,0 +1,184 @@
+package org.artifactly.service.dao;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.artifactly.service.pojo.Artifact;
+import org.artifactly.service.pojo.Location;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.KeyRange;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.inject.Inject;
+
+/*
+ * Write path shared by the artifact service implementations. Adding an artifact
+ * writes the artifact with its membership and one read model shard, the location
+ * itself is only written when it is created. The artifact and its membership are
+ * committed with a task that adds the artifact to the read model, so the read model
+ * is completed by the task queue when the shard write of the request fails.
+ */
+public class ArtifactWriter {
+
+	// Task parameters of a read model update
+	public static final String ARTIFACT = "artifact";
+	public static final String LOCATION = "location";
+
+	private static final String TASK_URL = "/tasks/add-to-read-model";
+
+	private static final Logger logger = Logger.getLogger(ArtifactWriter.class.getName());
+
+	private DatastoreService datastoreService = null;
+	private AsyncDatastoreService asyncDatastoreService = null;
+	private EntityCache entityCache = null;
+	private LocationArtifacts locationArtifacts = null;
+	private LocationAliases locationAliases = null;
+
+	@Inject
+	public ArtifactWriter(Manager manager, EntityCache entityCache, LocationArtifacts locationArtifacts, LocationAliases locationAliases) {
+
+		datastoreService = manager.getDatastoreService();
+		asyncDatastoreService = manager.getAsyncDatastoreService();
+		this.entityCache = entityCache;
+		this.locationArtifacts = locationArtifacts;
+		this.locationAliases = locationAliases;
+	}
+
+	public Artifact create(Artifact artifact, Location location) {
+
+		// The artifact id is allocated while the location is looked up
+		Future<KeyRange> artifactKeys = asyncDatastoreService.allocateIds(EntityMapper.ARTIFACT_KIND, 1);
+		Key locationKey = getOrCreate(location);
+
+		artifact.setKey(Futures.get(artifactKeys).getStart());
+		artifact.getLocations().add(locationKey);
+		artifact.setVersion(Versions.next());
+
+		// The artifact and its membership are in the artifact's entity group, the task is enqueued with them
+		List<Entity> entities = Arrays.asList(EntityMapper.toEntity(artifact), LocationMembership.toEntity(artifact, location));
+		Transaction transaction = datastoreService.beginTransaction();
+
+		try {
+
+			datastoreService.put(transaction, entities);
+			QueueFactory.getDefaultQueue().add(transaction, TaskOptions.Builder.withUrl(TASK_URL)
+																		.param(ARTIFACT, KeyFactory.keyToString(artifact.getKey()))
+																		.param(LOCATION, KeyFactory.keyToString(locationKey)));
+			transaction.commit();
+
+		} finally {
+
+			if(transaction.isActive()) {
+
+				transaction.rollback();
+			}
+		}
+
+		entityCache.written(entities);
+
+		try {
+
+			// The task finds the artifact added already, unless the shard write failed
+			locationArtifacts.add(locationKey, LocationArtifacts.shard(artifact.getKey()), Collections.singletonList(artifact));
+
+		} catch (RuntimeException e) {
+
+			// The artifact is committed, the task adds it to the read model when it runs
+			logger.log(Level.WARNING, "Read model of " + locationKey + " not updated", e);
+		}
+
+		return artifact;
+	}
+
+	/*
+	 * Adds the artifact to the read model of the location, run by the task enqueued with
+	 * the artifact. Returns whether the artifact was missing from the read model, an
+	 * artifact that has been swept already is not added.
+	 */
+	public boolean addToReadModel(Key artifactKey, Key locationKey) {
+
+		Entity entity = entityCache.get(artifactKey);
+
+		if(null == entity) {
+
+			return false;
+		}
+
+		return locationArtifacts.add(locationKey, LocationArtifacts.shard(artifactKey), Collections.singletonList(EntityMapper.toArtifact(entity)));
+	}
+
+	/*
+	 * Returns the key of the location at the coordinates, the location is created if
+	 * there is none. The named key is checked and written in one transaction, so
+	 * concurrent creates at the same place end up at the same location.
+	 */
+	public Key getOrCreate(Location location) {
+
+		Key locationKey = EntityMapper.locationKey(location.getLatitude(), location.getLongitude());
+
+		if(null != entityCache.get(locationKey)) {
+
+			location.setKey(locationKey);
+			return locationKey;
+		}
+
+		// Locations created before the named keys are found by their aliases
+		Key legacyKey = locationAliases.get(location.getLatitude(), location.getLongitude());
+
+		if(null != legacyKey) {
+
+			location.setKey(legacyKey);
+			return legacyKey;
+		}
+
+		Transaction transaction = datastoreService.beginTransaction();
+
+		try {
+
+			datastoreService.get(transaction, locationKey);
+
+		} catch (EntityNotFoundException e) {
+
+			location.setKey(locationKey);
+			location.setVersion(Versions.next());
+			Entity entity = EntityMapper.toEntity(location);
+			datastoreService.put(transaction, entity);
+
+			try {
+
+				transaction.commit();
+				entityCache.written(Collections.singletonList(entity));
+
+			} catch (ConcurrentModificationException concurrent) {
+
+				// Another request created the location first, unless it cannot be read
+				if(null == entityCache.get(locationKey)) {
+
+					throw concurrent;
+				}
+			}
+
+		} finally {
+
+			if(transaction.isActive()) {
+
+				transaction.rollback();
+			}
+		}
+
+		location.setKey(locationKey);
+		return locationKey;
+	}
+}
@@ -0,0 +1,209 @@
+package org.artifactly.service.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.users.User;
+import com.google.inject.Inject;
+
+/*
+ * Sets the indexed properties added after entities were written, one batch at a
+ * time. Until then the entities are excluded by the queries filtering on them:
+ * artifacts without expiration are missing from the listings, artifacts without
+ * creator id from the artifacts of their creator, memberships without visibility
+ * from the public feed and entities without version from the changes. The offset of the next batch is null once all entities
+ * have been visited. The locations backfill also stores the aliases of the locations
+ * created before the named keys.
+ */
+public class Backfill {
+
+	private static final int BATCH_SIZE = 100;
+	private static final String ZERO_OFFSET = "0";
+
+	private DatastoreService datastoreService = null;
+	private EntityCache entityCache = null;
+
+	@Inject
+	public Backfill(Manager manager, EntityCache entityCache) {
+
+		datastoreService = manager.getDatastoreService();
+		this.entityCache = entityCache;
+	}
+
+	/*
+	 * Sets the expiration, creator id and version on the next batch of artifacts, the
+	 * expiration of their memberships as well, and returns the keys of the updated
+	 * artifacts
+	 */
+	public PageableResults<Key> artifacts(String offset) {
+
+		QueryResultList<Entity> artifacts = datastoreService.prepare(new Query(EntityMapper.ARTIFACT_KIND)).asQueryResultList(fetchOptions(offset));
+
+		List<Entity> updatedEntities = new ArrayList<Entity>();
+		List<Key> artifactKeys = new ArrayList<Key>();
+		List<Key> membershipKeys = new ArrayList<Key>();
+
+		for(Entity artifact : artifacts) {
+
+			if(artifact.hasProperty(Expiry.PROPERTY) && artifact.hasProperty(Versions.PROPERTY) && artifact.hasProperty(EntityMapper.CREATOR_ID)) {
+
+				continue;
+			}
+
+			artifact.setProperty(Expiry.PROPERTY, Expiry.expiresAt((Date) artifact.getProperty("expirationDate")));
+			artifact.setProperty(EntityMapper.CREATOR_ID, EntityMapper.creatorId((User) artifact.getProperty("creator")));
+			setVersion(artifact);
+			updatedEntities.add(artifact);
+			artifactKeys.add(artifact.getKey());
+
+			for(Key locationKey : locations(artifact)) {
+
+				membershipKeys.add(LocationMembership.key(artifact.getKey(), locationKey));
+			}
+		}
+
+		if(!updatedEntities.isEmpty()) {
+
+			Map<Key, Entity> memberships = datastoreService.get(membershipKeys);
+
+			for(Entity membership : memberships.values()) {
+
+				Entity artifact = updatedEntities.get(artifactKeys.indexOf(membership.getKey().getParent()));
+				membership.setProperty(Expiry.PROPERTY, artifact.getProperty(Expiry.PROPERTY));
+				updatedEntities.add(membership);
+			}
+
+			entityCache.put(updatedEntities);
+		}
+
+		return page(artifactKeys, artifacts);
+	}
+
+	/*
+	 * Sets the version on the next batch of locations, stores the aliases of the
+	 * locations with generated ids, and returns the keys of the updated locations
+	 */
+	public PageableResults<Key> locations(String offset) {
+
+		QueryResultList<Entity> locations = datastoreService.prepare(new Query(EntityMapper.LOCATION_KIND)).asQueryResultList(fetchOptions(offset));
+
+		List<Entity> updatedEntities = new ArrayList<Entity>();
+		List<Key> locationKeys = new ArrayList<Key>();
+
+		for(Entity location : locations) {
+
+			if(!location.hasProperty(Versions.PROPERTY)) {
+
+				setVersion(location);
+				updatedEntities.add(location);
+				locationKeys.add(location.getKey());
+			}
+
+			if(null == location.getKey().getName()) {
+
+				updatedEntities.add(LocationAliases.toEntity(location));
+			}
+		}
+
+		if(!updatedEntities.isEmpty()) {
+
+			entityCache.put(updatedEntities);
+		}
+
+		return page(locationKeys, locations);
+	}
+
+	/*
+	 * Rewrites the next batch of memberships written before they carried the visibility
+	 * of their artifact and the geocells of their location, and returns the keys of the
+	 * updated memberships
+	 */
+	public PageableResults<Key> memberships(String offset) {
+
+		QueryResultList<Entity> memberships = datastoreService.prepare(new Query(LocationMembership.KIND)).asQueryResultList(fetchOptions(offset));
+
+		List<Entity> outdated = new ArrayList<Entity>();
+		Set<Key> keys = new HashSet<Key>();
+
+		for(Entity membership : memberships) {
+
+			if(!membership.hasProperty(LocationMembership.IS_PUBLIC)) {
+
+				outdated.add(membership);
+				keys.add(membership.getKey().getParent());
+				keys.add((Key) membership.getProperty(LocationMembership.LOCATION));
+			}
+		}
+
+		List<Entity> updatedEntities = new ArrayList<Entity>();
+
+		if(!outdated.isEmpty()) {
+
+			// The artifacts and locations are read with one batch get
+			Map<Key, Entity> entities = datastoreService.get(keys);
+
+			for(Entity membership : outdated) {
+
+				Entity artifact = entities.get(membership.getKey().getParent());
+				Entity location = entities.get(membership.getProperty(LocationMembership.LOCATION));
+
+				if(null != artifact && null != location) {
+
+					updatedEntities.add(LocationMembership.toEntity(EntityMapper.toArtifact(artifact), EntityMapper.toLocation(location)));
+				}
+			}
+
+			entityCache.put(updatedEntities);
+		}
+
+		return page(EntityMapper.keys(updatedEntities), memberships);
+	}
+
+	private void setVersion(Entity entity) {
+
+		if(!entity.hasProperty(Versions.PROPERTY)) {
+
+			entity.setProperty(Versions.PROPERTY, Versions.next());
+		}
+	}
+
+	private FetchOptions fetchOptions(String offset) {
+
+		FetchOptions fetchOptions = FetchOptions.Builder.withLimit(BATCH_SIZE);
+
+		if(null != offset && !"".equals(offset) && !ZERO_OFFSET.equals(offset)) {
+
+			fetchOptions.startCursor(Cursor.fromWebSafeString(offset));
+		}
+
+		return fetchOptions;
+	}
+
+	private PageableResults<Key> page(List<Key> keys, QueryResultList<Entity> batch) {
+
+		PageableResults<Key> pageableResults = new PageableResults<Key>();
+		pageableResults.setResults(keys);
+		pageableResults.setOffset(batch.size() < BATCH_SIZE ? null : batch.getCursor().toWebSafeString());
+
+		return pageableResults;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Collection<Key> locations(Entity artifact) {
+
+		Collection<Key> locations = (Collection<Key>) artifact.getProperty("locations");
+		return null == locations ? new ArrayList<Key>() : locations;
+	}
+}
@@ -0,0 +1,105 @@
+package org.artifactly.service.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.artifactly.service.pojo.Artifact;
+import org.artifactly.service.pojo.Location;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.inject.Inject;
+
+/*
+ * Looks up the locations and artifacts at many coordinates at once. The locations
+ * are read by their named keys with one batch get of the entity cache, and the read
+ * models of all locations with one batch get of their shards. Only coordinates
+ * without a named location, and locations without a complete read model, are looked
+ * up one by one.
+ */
+public class BatchQuery {
+
+	private static final int MAX_ARTIFACTS_PER_LOCATION = 1000;
+
+	private LocationService locationService = null;
+	private ArtifactService artifactService = null;
+	private LocationArtifacts locationArtifacts = null;
+	private EntityCache entityCache = null;
+
+	@Inject
+	public BatchQuery(LocationService locationService, ArtifactService artifactService, LocationArtifacts locationArtifacts, EntityCache entityCache) {
+
+		this.locationService = locationService;
+		this.artifactService = artifactService;
+		this.locationArtifacts = locationArtifacts;
+		this.entityCache = entityCache;
+	}
+
+	/*
+	 * Returns the location at each coordinate, or null where there is none
+	 */
+	public List<Location> getLocations(List<Location> coordinates) {
+
+		List<Key> keys = new ArrayList<Key>(coordinates.size());
+
+		for(Location coordinate : coordinates) {
+
+			keys.add(EntityMapper.locationKey(coordinate.getLatitude(), coordinate.getLongitude()));
+		}
+
+		Map<Key, Entity> entities = entityCache.get(new LinkedHashSet<Key>(keys));
+		List<Location> locations = new ArrayList<Location>(coordinates.size());
+
+		for(int index = 0; index < coordinates.size(); index++) {
+
+			Entity entity = entities.get(keys.get(index));
+
+			if(null != entity) {
+
+				locations.add(EntityMapper.toLocation(entity));
+			}
+			else {
+
+				// Locations created before the named keys are found by their coordinates
+				locations.add(locationService.get(coordinates.get(index).getLatitude(), coordinates.get(index).getLongitude()));
+			}
+		}
+
+		return locations;
+	}
+
+	/*
+	 * Returns the unexpired artifacts at each location, in the order of the locations.
+	 * A location without a complete read model is read up to MAX_ARTIFACTS_PER_LOCATION.
+	 */
+	public List<List<Artifact>> getArtifacts(List<Location> locations) {
+
+		Set<Key> locationKeys = new LinkedHashSet<Key>();
+
+		for(Location location : locations) {
+
+			locationKeys.add(location.getKey());
+		}
+
+		Map<Key, List<Artifact>> readModels = locationArtifacts.get(locationKeys);
+		List<List<Artifact>> artifacts = new ArrayList<List<Artifact>>(locations.size());
+
+		for(Location location : locations) {
+
+			List<Artifact> artifactsAtLocation = readModels.get(location.getKey());
+
+			if(null == artifactsAtLocation) {
+
+				artifactsAtLocation = artifactService.getAtLocations(Collections.singletonList(location), null, MAX_ARTIFACTS_PER_LOCATION).getResults();
+			}
+
+			artifacts.add(artifactsAtLocation);
+		}
+
+		return artifacts;
+	}
+}
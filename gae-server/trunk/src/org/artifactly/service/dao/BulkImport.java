@@ -0,0 +1,331 @@
+package org.artifactly.service.dao;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.artifactly.service.pojo.Artifact;
+import org.artifactly.service.pojo.Location;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.appengine.api.users.User;
+import com.google.inject.Inject;
+
+/*
+ * Imports large numbers of artifacts through the task queue. The rows of an import
+ * are stored in chunks of CHUNK_SIZE rows and every chunk is imported by a task of
+ * its own, with one batch put of its artifacts and memberships and one transaction
+ * per read model shard it adds to. Missing locations are created one by one, as by
+ * the single creates. The artifact ids of all rows are
+ * allocated when the import starts, so a chunk that is retried writes the same
+ * artifacts again instead of duplicates. A chunk is marked done once imported.
+ */
+public class BulkImport {
+
+	public static final String JOB_KIND = "ImportJob";
+	public static final String CHUNK_KIND = "ImportChunk";
+	public static final int CHUNK_SIZE = 100;
+	public static final int MAX_ROWS = 100000;
+
+	// Task parameters of a chunk
+	public static final String JOB = "job";
+	public static final String CHUNK = "chunk";
+
+	private static final String QUEUE = "import";
+	private static final String TASK_URL = "/tasks/import-chunk";
+
+	// Entities per put and tasks per queue call
+	private static final int BATCH_SIZE = 100;
+
+	private static final String CREATOR = "creator";
+	private static final String CREATED = "created";
+	private static final String ROWS = "rows";
+	private static final String CHUNKS = "chunks";
+	private static final String FIRST_ARTIFACT_ID = "firstArtifactId";
+	private static final String FIRST_ROW = "firstRow";
+	private static final String DONE = "done";
+	private static final String LATITUDES = "latitudes";
+	private static final String LONGITUDES = "longitudes";
+	private static final String NAMES = "names";
+	private static final String IS_PUBLIC = "isPublic";
+
+	private DatastoreService datastoreService = null;
+	private EntityCache entityCache = null;
+	private LocationArtifacts locationArtifacts = null;
+	private ArtifactWriter artifactWriter = null;
+
+	@Inject
+	public BulkImport(Manager manager, EntityCache entityCache, LocationArtifacts locationArtifacts, ArtifactWriter artifactWriter) {
+
+		datastoreService = manager.getDatastoreService();
+		this.entityCache = entityCache;
+		this.locationArtifacts = locationArtifacts;
+		this.artifactWriter = artifactWriter;
+	}
+
+	/*
+	 * Stores the rows in chunks and enqueues a task for every chunk. The artifact of a
+	 * row is created by the creator at the location of the same row.
+	 */
+	public ImportStatus start(User creator, List<Location> locations, List<Artifact> artifacts) {
+
+		int rows = artifacts.size();
+		int chunks = (rows + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+		Key jobKey = datastoreService.allocateIds(JOB_KIND, 1).getStart();
+		long firstArtifactId = 0;
+
+		if(0 < rows) {
+
+			firstArtifactId = datastoreService.allocateIds(EntityMapper.ARTIFACT_KIND, rows).getStart().getId();
+		}
+
+		List<Entity> entities = new ArrayList<Entity>(BATCH_SIZE);
+
+		for(int chunk = 0; chunk < chunks; chunk++) {
+
+			int firstRow = chunk * CHUNK_SIZE;
+			int lastRow = Math.min(rows, firstRow + CHUNK_SIZE);
+
+			Entity entity = new Entity(chunkKey(jobKey.getId(), chunk));
+			entity.setProperty(JOB, jobKey.getId());
+			entity.setProperty(DONE, false);
+			entity.setUnindexedProperty(FIRST_ROW, firstRow);
+
+			List<Double> latitudes = new ArrayList<Double>(lastRow - firstRow);
+			List<Double> longitudes = new ArrayList<Double>(lastRow - firstRow);
+			List<String> names = new ArrayList<String>(lastRow - firstRow);
+			List<Boolean> isPublic = new ArrayList<Boolean>(lastRow - firstRow);
+
+			for(int row = firstRow; row < lastRow; row++) {
+
+				latitudes.add(locations.get(row).getLatitude());
+				longitudes.add(locations.get(row).getLongitude());
+				names.add(artifacts.get(row).getName());
+				isPublic.add(Boolean.TRUE.equals(artifacts.get(row).getIsPublic()));
+			}
+
+			entity.setUnindexedProperty(LATITUDES, latitudes);
+			entity.setUnindexedProperty(LONGITUDES, longitudes);
+			entity.setUnindexedProperty(NAMES, names);
+			entity.setUnindexedProperty(IS_PUBLIC, isPublic);
+			entities.add(entity);
+
+			if(BATCH_SIZE == entities.size()) {
+
+				datastoreService.put(entities);
+				entities.clear();
+			}
+		}
+
+		// The job is stored after its chunks, so a job that is found has all of them
+		Entity job = new Entity(jobKey);
+		job.setUnindexedProperty(CREATOR, creator);
+		job.setUnindexedProperty(CREATED, new Date());
+		job.setUnindexedProperty(ROWS, rows);
+		job.setUnindexedProperty(CHUNKS, chunks);
+		job.setUnindexedProperty(FIRST_ARTIFACT_ID, firstArtifactId);
+		entities.add(job);
+		datastoreService.put(entities);
+
+		List<TaskOptions> tasks = new ArrayList<TaskOptions>(BATCH_SIZE);
+
+		for(int chunk = 0; chunk < chunks; chunk++) {
+
+			tasks.add(TaskOptions.Builder.withUrl(TASK_URL).param(JOB, String.valueOf(jobKey.getId())).param(CHUNK, String.valueOf(chunk)));
+
+			if(BATCH_SIZE == tasks.size() || chunk == chunks - 1) {
+
+				QueueFactory.getQueue(QUEUE).add(tasks);
+				tasks.clear();
+			}
+		}
+
+		ImportStatus status = new ImportStatus();
+		status.setId(jobKey.getId());
+		status.setRows(rows);
+		status.setChunks(chunks);
+
+		return status;
+	}
+
+	/*
+	 * Imports the rows of a chunk, unless it is done already. Returns the number of
+	 * rows imported.
+	 */
+	public int importChunk(long jobId, int chunk) {
+
+		Entity job = null;
+		Entity entity = null;
+
+		try {
+
+			job = datastoreService.get(KeyFactory.createKey(JOB_KIND, jobId));
+			entity = datastoreService.get(chunkKey(jobId, chunk));
+
+		} catch (EntityNotFoundException e) {
+
+			throw new IllegalArgumentException("No chunk " + chunk + " of import " + jobId, e);
+		}
+
+		if(Boolean.TRUE.equals(entity.getProperty(DONE))) {
+
+			return 0;
+		}
+
+		User creator = (User) job.getProperty(CREATOR);
+		Date created = (Date) job.getProperty(CREATED);
+		long firstArtifactId = (Long) job.getProperty(FIRST_ARTIFACT_ID);
+		long firstRow = (Long) entity.getProperty(FIRST_ROW);
+
+		List<Double> latitudes = values(entity, LATITUDES);
+		List<Double> longitudes = values(entity, LONGITUDES);
+		List<String> names = values(entity, NAMES);
+		List<Boolean> isPublic = values(entity, IS_PUBLIC);
+
+		// Rows at the same coordinates share their location
+		Map<Key, Location> locations = new LinkedHashMap<Key, Location>();
+
+		for(int index = 0; index < latitudes.size(); index++) {
+
+			Key locationKey = EntityMapper.locationKey(latitudes.get(index), longitudes.get(index));
+
+			if(!locations.containsKey(locationKey)) {
+
+				Location location = new Location(latitudes.get(index), longitudes.get(index));
+				location.setKey(locationKey);
+				locations.put(locationKey, location);
+			}
+		}
+
+		List<Entity> entities = new ArrayList<Entity>();
+		Map<Key, Entity> existingLocations = entityCache.get(locations.keySet());
+
+		for(Map.Entry<Key, Location> entry : locations.entrySet()) {
+
+			Entity existingLocation = existingLocations.get(entry.getKey());
+
+			if(null != existingLocation) {
+
+				entry.setValue(EntityMapper.toLocation(existingLocation));
+			}
+			else {
+
+				// As for a single create, a location with a generated id is found and a new one is created in a transaction
+				artifactWriter.getOrCreate(entry.getValue());
+			}
+		}
+
+		Map<Key, List<Artifact>> artifactsAtLocations = new LinkedHashMap<Key, List<Artifact>>();
+
+		for(int index = 0; index < names.size(); index++) {
+
+			Location location = locations.get(EntityMapper.locationKey(latitudes.get(index), longitudes.get(index)));
+
+			Artifact artifact = new Artifact(creator, names.get(index), created, isPublic.get(index));
+			artifact.setKey(KeyFactory.createKey(EntityMapper.ARTIFACT_KIND, firstArtifactId + firstRow + index));
+			artifact.getLocations().add(location.getKey());
+			artifact.setVersion(Versions.next());
+
+			entities.add(EntityMapper.toEntity(artifact));
+			entities.add(LocationMembership.toEntity(artifact, location));
+
+			List<Artifact> artifacts = artifactsAtLocations.get(location.getKey());
+
+			if(null == artifacts) {
+
+				artifacts = new ArrayList<Artifact>();
+				artifactsAtLocations.put(location.getKey(), artifacts);
+			}
+
+			artifacts.add(artifact);
+		}
+
+		entityCache.put(entities);
+
+		// A chunk always adds to the same shard, concurrent chunks add to different ones
+		int shard = chunk % LocationArtifacts.SHARDS;
+
+		for(Map.Entry<Key, List<Artifact>> entry : artifactsAtLocations.entrySet()) {
+
+			locationArtifacts.add(entry.getKey(), shard, entry.getValue());
+		}
+
+		// The rows are not needed anymore
+		entity.removeProperty(LATITUDES);
+		entity.removeProperty(LONGITUDES);
+		entity.removeProperty(NAMES);
+		entity.removeProperty(IS_PUBLIC);
+		entity.setProperty(DONE, true);
+		datastoreService.put(entity);
+
+		return names.size();
+	}
+
+	/*
+	 * Returns the progress of the import, or null if there is none started by the creator
+	 */
+	public ImportStatus getStatus(long jobId, User creator) {
+
+		Entity job = null;
+
+		try {
+
+			job = datastoreService.get(KeyFactory.createKey(JOB_KIND, jobId));
+
+		} catch (EntityNotFoundException e) {
+
+			return null;
+		}
+
+		if(!creator.equals(job.getProperty(CREATOR))) {
+
+			return null;
+		}
+
+		ImportStatus status = new ImportStatus();
+		status.setId(jobId);
+		status.setRows((Long) job.getProperty(ROWS));
+		status.setChunks((Long) job.getProperty(CHUNKS));
+
+		Query query = new Query(CHUNK_KIND).setKeysOnly();
+		query.addFilter(JOB, FilterOperator.EQUAL, jobId);
+		query.addFilter(DONE, FilterOperator.EQUAL, true);
+
+		for(Entity done : datastoreService.prepare(query).asIterable()) {
+
+			String name = done.getKey().getName();
+			long firstRow = Long.parseLong(name.substring(name.indexOf(':') + 1)) * CHUNK_SIZE;
+
+			status.setImportedChunks(status.getImportedChunks() + 1);
+			status.setImportedRows(status.getImportedRows() + Math.min(CHUNK_SIZE, status.getRows() - firstRow));
+		}
+
+		return status;
+	}
+
+	/*
+	 * Chunks are root entities, so the tasks of an import do not contend on one entity group
+	 */
+	private Key chunkKey(long jobId, int chunk) {
+
+		return KeyFactory.createKey(CHUNK_KIND, jobId + ":" + chunk);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> List<T> values(Entity entity, String property) {
+
+		List<T> values = (List<T>) entity.getProperty(property);
+		return null == values ? new ArrayList<T>() : values;
+	}
+}
@@ -0,0 +1,98 @@
+package org.artifactly.service.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.artifactly.service.geo.GeoHash;
+import org.artifactly.service.geo.GeoUtils;
+
+/*
+ * Names of the scopes the cached query results depend on. A write invalidates the
+ * scopes of the location it touches: its geocells at every precision, the location
+ * itself and the scope of all results.
+ */
+public final class CacheScopes {
+
+	// Scope of the results depending on every write, such as the pages of all artifacts
+	public static final String ALL = "all";
+
+	// Rounded centers of radius lookups are at most this fraction of the radius apart
+	private static final double GRID_FRACTION = 0.05;
+
+	private static final String CELL_PREFIX = "cell:";
+	private static final String LOCATION_PREFIX = "location:";
+	private static final String CREATOR_PREFIX = "creator:";
+
+	private CacheScopes() {
+
+	}
+
+	public static String cell(String cell) {
+
+		return CELL_PREFIX + cell;
+	}
+
+	public static List<String> cells(Collection<String> cells) {
+
+		List<String> scopes = new ArrayList<String>(cells.size());
+
+		for(String cell : cells) {
+
+			scopes.add(cell(cell));
+		}
+
+		return scopes;
+	}
+
+	/*
+	 * The scope of the location at the coordinate, which is the same for all the
+	 * coordinates rounded to it
+	 */
+	public static String location(double latitude, double longitude) {
+
+		return LOCATION_PREFIX + EntityMapper.locationKey(latitude, longitude).getName();
+	}
+
+	public static String creator(String creatorId) {
+
+		return CREATOR_PREFIX + creatorId;
+	}
+
+	/*
+	 * Returns the scopes a write at the coordinate invalidates
+	 */
+	public static List<String> written(double latitude, double longitude) {
+
+		List<String> scopes = cells(GeoHash.cells(latitude, longitude));
+		scopes.add(location(latitude, longitude));
+		scopes.add(ALL);
+
+		return scopes;
+	}
+
+	/*
+	 * Returns the scopes of the lookup within the radius around the grid center of the
+	 * coordinate
+	 */
+	public static List<String> gridRadius(double latitude, double longitude, double radius) {
+
+		double[] center = gridCenter(latitude, longitude, radius);
+
+		return cells(GeoHash.cover(center[0], center[1], radius));
+	}
+
+	/*
+	 * Returns the coordinate rounded to a grid whose spacing is the largest power of
+	 * two degrees no larger than the grid fraction of the radius, so lookups with radii
+	 * of the same magnitude from nearby coordinates share a center
+	 */
+	public static double[] gridCenter(double latitude, double longitude, double radius) {
+
+		double spacing = radius * GRID_FRACTION / GeoUtils.METERS_PER_DEGREE;
+		spacing = Math.pow(2, Math.floor(Math.log(spacing) / Math.log(2)));
+
+		return new double[] { Math.max(-90.0, Math.min(90.0, Math.round(latitude / spacing) * spacing)),
+							  GeoUtils.normalizeLongitude(Math.round(longitude / spacing) * spacing) };
+	}
+}
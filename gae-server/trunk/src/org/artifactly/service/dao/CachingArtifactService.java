@@ -0,0 +1,151 @@
+package org.artifactly.service.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.artifactly.service.pojo.Artifact;
+import org.artifactly.service.pojo.Location;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/*
+ * Caches the artifact queries by the scopes they depend on, so creating an artifact
+ * only invalidates the results at its location, in its geocells and of its creator.
+ * The artifacts within a radius are cached for the center rounded to a grid of about
+ * a twentieth of the radius, and looked up around the rounded center, so requests
+ * from nearby coordinates share the result.
+ */
+public class CachingArtifactService implements ArtifactService {
+
+	private ArtifactService artifactService = null;
+	private QueryCache artifactCache = null;
+	private QueryCache locationCache = null;
+
+	@Inject
+	public CachingArtifactService(@Named("backing") ArtifactService artifactService,
+								  @Named("artifact") QueryCache artifactCache,
+								  @Named("location") QueryCache locationCache) {
+
+		this.artifactService = artifactService;
+		this.artifactCache = artifactCache;
+		this.locationCache = locationCache;
+	}
+
+	public Artifact create(Artifact artifact, Location location) {
+
+		Artifact persistedArtifact = artifactService.create(artifact, location);
+
+		// The location may have been created or changed as well
+		List<String> scopes = CacheScopes.written(location.getLatitude(), location.getLongitude());
+		locationCache.invalidate(scopes);
+		scopes.add(CacheScopes.creator(EntityMapper.creatorId(artifact.getCreator())));
+		artifactCache.invalidate(scopes);
+
+		return persistedArtifact;
+	}
+
+	public List<Artifact> getAll() {
+
+		return artifactService.getAll();
+	}
+
+	public Iterable<Artifact> iterateAll() {
+
+		return artifactService.iterateAll();
+	}
+
+	public PageableResults<Artifact> get(final String offset, final long limit) {
+
+		return artifactCache.get("page:" + offset + ":" + limit, Collections.singleton(CacheScopes.ALL), new Callable<PageableResults<Artifact>>() {
+
+			public PageableResults<Artifact> call() {
+
+				PageableResults<Artifact> pageableResults = artifactService.get(offset, limit);
+				pageableResults.setResults(new ArrayList<Artifact>(pageableResults.getResults()));
+				return pageableResults;
+			}
+		});
+	}
+
+	public PageableResults<Artifact> getCreatedBy(final String creatorId, final String offset, final long limit) {
+
+		return artifactCache.get("creator:" + creatorId + ":" + offset + ":" + limit, Collections.singleton(CacheScopes.creator(creatorId)), new Callable<PageableResults<Artifact>>() {
+
+			public PageableResults<Artifact> call() {
+
+				PageableResults<Artifact> pageableResults = artifactService.getCreatedBy(creatorId, offset, limit);
+				pageableResults.setResults(new ArrayList<Artifact>(pageableResults.getResults()));
+				return pageableResults;
+			}
+		});
+	}
+
+	public PageableResults<Artifact> get(final double latitude, final double longitude, final String offset, final long limit) {
+
+		String scope = CacheScopes.location(latitude, longitude);
+
+		return artifactCache.get(scope + ":" + offset + ":" + limit, Collections.singleton(scope), new Callable<PageableResults<Artifact>>() {
+
+			public PageableResults<Artifact> call() {
+
+				PageableResults<Artifact> pageableResults = artifactService.get(latitude, longitude, offset, limit);
+				pageableResults.setResults(new ArrayList<Artifact>(pageableResults.getResults()));
+				return pageableResults;
+			}
+		});
+	}
+
+	public PageableResults<Artifact> get(double latitude, double longitude, final double radius, final String offset, final long limit) {
+
+		double[] center = CacheScopes.gridCenter(latitude, longitude, radius);
+		final double gridLatitude = center[0];
+		final double gridLongitude = center[1];
+
+		String key = "radius:" + gridLatitude + "," + gridLongitude + "," + radius + ":" + offset + ":" + limit;
+
+		return artifactCache.get(key, CacheScopes.gridRadius(latitude, longitude, radius), new Callable<PageableResults<Artifact>>() {
+
+			public PageableResults<Artifact> call() {
+
+				PageableResults<Artifact> pageableResults = artifactService.get(gridLatitude, gridLongitude, radius, offset, limit);
+				pageableResults.setResults(new ArrayList<Artifact>(pageableResults.getResults()));
+				return pageableResults;
+			}
+		});
+	}
+
+	public PageableResults<Artifact> getAtLocations(List<Location> locations, String offset, long limit) {
+
+		// The locations are looked up through the cached cells, the read models are read by key
+		return artifactService.getAtLocations(locations, offset, limit);
+	}
+
+	public long getHits() {
+
+		return artifactCache.getHits();
+	}
+
+	public long getMisses() {
+
+		return artifactCache.getMisses();
+	}
+
+	/*
+	 * Returns the number of queries saved by sharing a query already running
+	 */
+	public long getCoalesced() {
+
+		return artifactCache.getCoalesced();
+	}
+
+	/*
+	 * Returns the number of results served stale after a missed read deadline
+	 */
+	public long getStaleHits() {
+
+		return artifactCache.getStaleHits();
+	}
+}
@@ -0,0 +1,177 @@
+package org.artifactly.service.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.artifactly.service.geo.GeoHash;
+import org.artifactly.service.geo.GeoUtils;
+import org.artifactly.service.pojo.Location;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/*
+ * Caches the location queries by the scopes they depend on, so creating a location
+ * only invalidates the results in its geocells and at its coordinate
+ */
+public class CachingLocationService implements LocationService {
+
+	private static final String CELL_PREFIX = "cell:";
+
+	private LocationService locationService = null;
+	private QueryCache locationCache = null;
+
+	@Inject
+	public CachingLocationService(@Named("backing") LocationService locationService,
+								  @Named("location") QueryCache locationCache) {
+
+		this.locationService = locationService;
+		this.locationCache = locationCache;
+	}
+
+	public List<Location> getAll() {
+
+		return locationService.getAll();
+	}
+
+	public Iterable<Location> iterateAll() {
+
+		return locationService.iterateAll();
+	}
+
+	public PageableResults<Location> get(final String offset, final long limit) {
+
+		return locationCache.get("page:" + offset + ":" + limit, Collections.singleton(CacheScopes.ALL), new Callable<PageableResults<Location>>() {
+
+			public PageableResults<Location> call() {
+
+				PageableResults<Location> pageableResults = locationService.get(offset, limit);
+				pageableResults.setResults(new ArrayList<Location>(pageableResults.getResults()));
+				return pageableResults;
+			}
+		});
+	}
+
+	public Location get(final double latitude, final double longitude) {
+
+		String scope = CacheScopes.location(latitude, longitude);
+
+		// Cached as a list, so that a coordinate without location is cached as well
+		List<Location> locations = locationCache.get(scope, Collections.singleton(scope), new Callable<List<Location>>() {
+
+			public List<Location> call() {
+
+				List<Location> locations = new ArrayList<Location>(1);
+				Location location = locationService.get(latitude, longitude);
+
+				if(null != location) {
+
+					locations.add(location);
+				}
+
+				return locations;
+			}
+		});
+
+		return locations.isEmpty() ? null : locations.get(0);
+	}
+
+	public List<Location> get(double latitude, double longitude, double radius) {
+
+		Map<String, List<Location>> cells = get(GeoHash.cover(latitude, longitude, radius));
+		List<Location> locations = new ArrayList<Location>();
+
+		for(List<Location> cell : cells.values()) {
+
+			locations.addAll(cell);
+		}
+
+		return GeoUtils.within(locations, latitude, longitude, radius);
+	}
+
+	public Map<String, List<Location>> get(Set<String> cells) {
+
+		return get(cells, Integer.MAX_VALUE);
+	}
+
+	@SuppressWarnings("unchecked")
+	public Map<String, List<Location>> get(Set<String> cells, int limit) {
+
+		// Cells read with a limit are cached apart from the complete cells
+		String prefix = Integer.MAX_VALUE == limit ? CELL_PREFIX : CELL_PREFIX + limit + ":";
+		Map<String, Long> scopeStamps = locationCache.getStamps(CacheScopes.cells(cells));
+		Map<String, Long> stamps = new HashMap<String, Long>();
+
+		for(String cell : cells) {
+
+			stamps.put(prefix + cell, scopeStamps.get(CacheScopes.cell(cell)));
+		}
+
+		Map<String, List<Location>> locations = new HashMap<String, List<Location>>();
+		Set<String> missingCells = new HashSet<String>(cells);
+
+		for(Map.Entry<String, Object> entry : locationCache.getAll(stamps).entrySet()) {
+
+			String cell = entry.getKey().substring(prefix.length());
+			locations.put(cell, (List<Location>) entry.getValue());
+			missingCells.remove(cell);
+		}
+
+		// Only the cells missing from the cache are queried
+		if(!missingCells.isEmpty()) {
+
+			Map<String, List<Location>> missingLocations = locationService.get(missingCells, limit);
+			Map<String, Object> values = new HashMap<String, Object>();
+
+			for(Map.Entry<String, List<Location>> entry : missingLocations.entrySet()) {
+
+				List<Location> cell = new ArrayList<Location>(entry.getValue());
+				locations.put(entry.getKey(), cell);
+				values.put(prefix + entry.getKey(), cell);
+			}
+
+			locationCache.putAll(stamps, values);
+		}
+
+		return locations;
+	}
+
+	public Location create(Location location) {
+
+		Location persistedLocation = locationService.create(location);
+		locationCache.invalidate(CacheScopes.written(location.getLatitude(), location.getLongitude()));
+		return persistedLocation;
+	}
+
+	public long getHits() {
+
+		return locationCache.getHits();
+	}
+
+	public long getMisses() {
+
+		return locationCache.getMisses();
+	}
+
+	/*
+	 * Returns the number of queries saved by sharing a query already running
+	 */
+	public long getCoalesced() {
+
+		return locationCache.getCoalesced();
+	}
+
+	/*
+	 * Returns the number of results served stale after a missed read deadline
+	 */
+	public long getStaleHits() {
+
+		return locationCache.getStaleHits();
+	}
+}
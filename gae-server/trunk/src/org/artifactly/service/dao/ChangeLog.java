@@ -0,0 +1,169 @@
+package org.artifactly.service.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.inject.Inject;
+
+/*
+ * Reads the changes since a sync token from the indexed versions of the artifacts,
+ * the locations and the tombstones of deleted entities. The token is the version
+ * up to which a client has seen the changes, the queries of the three kinds run
+ * concurrently and their results are merged in version order.
+ */
+public class ChangeLog {
+
+	public static final String TOMBSTONE_KIND = "Tombstone";
+
+	private static final String KEY = "key";
+
+	private AsyncDatastoreService asyncDatastoreService = null;
+
+	@Inject
+	public ChangeLog(Manager manager) {
+
+		asyncDatastoreService = manager.getAsyncReadDatastoreService();
+	}
+
+	public static Entity toTombstone(Key key) {
+
+		Entity entity = new Entity(TOMBSTONE_KIND, KeyFactory.keyToString(key));
+		entity.setUnindexedProperty(KEY, key);
+		entity.setProperty(Versions.PROPERTY, Versions.next());
+
+		return entity;
+	}
+
+	/*
+	 * Returns at most limit changes with versions after the token. Changes are returned
+	 * until the settled version, the returned token continues after the last change or
+	 * at the settled version when all changes have been returned.
+	 */
+	public Changes get(String token, int limit) {
+
+		long since = Long.parseLong(token);
+		long until = Versions.settled();
+
+		Changes changes = new Changes();
+		changes.setToken(token);
+
+		if(since >= until) {
+
+			return changes;
+		}
+
+		List<QueryResultIterator<Entity>> pending = new ArrayList<QueryResultIterator<Entity>>();
+
+		for(String kind : new String[] { EntityMapper.ARTIFACT_KIND, EntityMapper.LOCATION_KIND, TOMBSTONE_KIND }) {
+
+			Query query = new Query(kind);
+			query.addFilter(Versions.PROPERTY, FilterOperator.GREATER_THAN, since);
+			query.addFilter(Versions.PROPERTY, FilterOperator.LESS_THAN_OR_EQUAL, until);
+			query.addSort(Versions.PROPERTY, SortDirection.ASCENDING);
+
+			pending.add(asyncDatastoreService.prepare(query).asQueryResultIterator(FetchOptions.Builder.withLimit(limit).chunkSize(limit)));
+		}
+
+		List<Entity> entities = new ArrayList<Entity>();
+		boolean isComplete = true;
+
+		for(QueryResultIterator<Entity> results : pending) {
+
+			int count = 0;
+
+			while(results.hasNext()) {
+
+				entities.add(results.next());
+				count++;
+			}
+
+			isComplete &= count < limit;
+		}
+
+		Collections.sort(entities, new Comparator<Entity>() {
+
+			public int compare(Entity entity1, Entity entity2) {
+
+				return version(entity1).compareTo(version(entity2));
+			}
+		});
+
+		List<Entity> page = page(entities, limit);
+
+		for(Entity entity : page) {
+
+			if(EntityMapper.ARTIFACT_KIND.equals(entity.getKind())) {
+
+				changes.getArtifacts().add(EntityMapper.toArtifact(entity));
+			}
+			else if(EntityMapper.LOCATION_KIND.equals(entity.getKind())) {
+
+				changes.getLocations().add(EntityMapper.toLocation(entity));
+			}
+			else {
+
+				changes.getDeleted().add(new Tombstone((Key) entity.getProperty(KEY), version(entity)));
+			}
+		}
+
+		if(isComplete && page.size() == entities.size()) {
+
+			changes.setToken(String.valueOf(until));
+		}
+		else if(!page.isEmpty()) {
+
+			changes.setToken(String.valueOf(version(page.get(page.size() - 1))));
+		}
+
+		return changes;
+	}
+
+	/*
+	 * Returns the first changes up to the limit. Changes of different instances may share
+	 * a version, those are not split between two pages as the next page starts after the
+	 * version of the last change, unless they fill the page by themselves.
+	 */
+	private List<Entity> page(List<Entity> entities, int limit) {
+
+		if(entities.size() <= limit) {
+
+			return entities;
+		}
+
+		Long nextVersion = version(entities.get(limit));
+		int end = limit;
+
+		while(end > 0 && nextVersion.equals(version(entities.get(end - 1)))) {
+
+			end--;
+		}
+
+		if(0 == end) {
+
+			end = limit;
+
+			while(end < entities.size() && nextVersion.equals(version(entities.get(end)))) {
+
+				end++;
+			}
+		}
+
+		return entities.subList(0, end);
+	}
+
+	private static Long version(Entity entity) {
+
+		return (Long) entity.getProperty(Versions.PROPERTY);
+	}
+}
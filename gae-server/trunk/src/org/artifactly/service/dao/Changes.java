@@ -0,0 +1,57 @@
+package org.artifactly.service.dao;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.artifactly.service.pojo.Artifact;
+import org.artifactly.service.pojo.Location;
+
+/*
+ * Entities written or deleted since a sync token, and the token to continue from
+ */
+public class Changes implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private List<Artifact> artifacts = new ArrayList<Artifact>();
+	private List<Location> locations = new ArrayList<Location>();
+	private List<Tombstone> deleted = new ArrayList<Tombstone>();
+	private String token;
+
+	public Changes() {
+
+	}
+
+	public List<Artifact> getArtifacts() {
+		return artifacts;
+	}
+
+	public void setArtifacts(List<Artifact> artifacts) {
+		this.artifacts = artifacts;
+	}
+
+	public List<Location> getLocations() {
+		return locations;
+	}
+
+	public void setLocations(List<Location> locations) {
+		this.locations = locations;
+	}
+
+	public List<Tombstone> getDeleted() {
+		return deleted;
+	}
+
+	public void setDeleted(List<Tombstone> deleted) {
+		this.deleted = deleted;
+	}
+
+	public String getToken() {
+		return token;
+	}
+
+	public void setToken(String token) {
+		this.token = token;
+	}
+}
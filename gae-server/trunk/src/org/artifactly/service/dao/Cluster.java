@@ -0,0 +1,60 @@
+package org.artifactly.service.dao;
+
+import java.io.Serializable;
+
+/*
+ * Aggregate of the locations in one grid cell of a viewport
+ */
+public class Cluster implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private String cell;
+	private double latitude;
+	private double longitude;
+	private int count;
+
+	public Cluster() {
+
+	}
+
+	public Cluster(String cell, double latitude, double longitude, int count) {
+
+		this.cell = cell;
+		this.latitude = latitude;
+		this.longitude = longitude;
+		this.count = count;
+	}
+
+	public String getCell() {
+		return cell;
+	}
+
+	public void setCell(String cell) {
+		this.cell = cell;
+	}
+
+	public double getLatitude() {
+		return latitude;
+	}
+
+	public void setLatitude(double latitude) {
+		this.latitude = latitude;
+	}
+
+	public double getLongitude() {
+		return longitude;
+	}
+
+	public void setLongitude(double longitude) {
+		this.longitude = longitude;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public void setCount(int count) {
+		this.count = count;
+	}
+}
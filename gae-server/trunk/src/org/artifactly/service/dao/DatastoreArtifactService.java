@@ -0,0 +1,219 @@
+package org.artifactly.service.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.artifactly.service.pojo.Artifact;
+import org.artifactly.service.pojo.Location;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.inject.Inject;
+
+/*
+ * ArtifactService on the low-level datastore API. Queries are keys-only and the
+ * entities are loaded with one batch get and mapped directly, bypassing JDO.
+ */
+public class DatastoreArtifactService implements ArtifactService {
+
+	private DatastoreService datastoreService = null;
+	private LocationService locationService = null;
+	private ArtifactWriter artifactWriter = null;
+	private EntityCache entityCache = null;
+	private LocationPages locationPages = null;
+	private static final String ZERO_OFFSET = "0";
+	private static final long BATCH_SIZE = 100;
+
+	@Inject
+	public DatastoreArtifactService(Manager manager,
+									LocationService locationService,
+									ArtifactWriter artifactWriter,
+									LocationArtifacts locationArtifacts,
+									LocationMembership locationMembership,
+									EntityCache entityCache) {
+
+		datastoreService = manager.getReadDatastoreService();
+		this.locationService = locationService;
+		this.artifactWriter = artifactWriter;
+		this.entityCache = entityCache;
+
+		locationPages = new LocationPages(locationArtifacts, locationMembership, entityCache) {
+
+			@Override
+			protected PageableResults<Artifact> query(Key locationKey, String offset, long limit) {
+
+				return DatastoreArtifactService.this.query(locationKey, offset, limit);
+			}
+		};
+	}
+
+	public Artifact create(Artifact artifact, Location location) {
+
+		return artifactWriter.create(artifact, location);
+	}
+
+	public List<Artifact> getAll() {
+
+		List<Artifact> artifacts = new ArrayList<Artifact>();
+
+		for(Entity entity : datastoreService.prepare(unexpired(new Date())).asIterable()) {
+
+			artifacts.add(EntityMapper.toArtifact(entity));
+		}
+
+		return artifacts;
+	}
+
+	public Iterable<Artifact> iterateAll() {
+
+		return new PagingIterable<Artifact>(BATCH_SIZE) {
+
+			@Override
+			protected PageableResults<Artifact> fetch(String offset, long limit) {
+
+				return get(offset, limit);
+			}
+		};
+	}
+
+	public PageableResults<Artifact> get(String offset, long limit) {
+
+		Date asOf = Expiry.asOf(offset);
+		Cursor cursor = Expiry.cursor(offset);
+		FetchOptions fetchOptions = FetchOptions.Builder.withLimit((int) limit);
+
+		if(null != cursor) {
+
+			fetchOptions.startCursor(cursor);
+		}
+
+		Query query = unexpired(asOf).setKeysOnly();
+		QueryResultList<Entity> keyEntities = datastoreService.prepare(query).asQueryResultList(fetchOptions);
+
+		PageableResults<Artifact> pageableResults = new PageableResults<Artifact>();
+		pageableResults.setResults(get(EntityMapper.keys(keyEntities)));
+		pageableResults.setOffset(Expiry.offset(asOf, keyEntities.getCursor()));
+
+		return pageableResults;
+	}
+
+	/*
+	 * Returns a page of the artifacts of the creator, newest first. Expired artifacts
+	 * that have not been swept yet are skipped, as the expiration cannot be filtered
+	 * in a query sorted by creation date, and the query continues until the page is full.
+	 */
+	public PageableResults<Artifact> getCreatedBy(String creatorId, String offset, long limit) {
+
+		Query query = new Query(EntityMapper.ARTIFACT_KIND).setKeysOnly();
+		query.addFilter(EntityMapper.CREATOR_ID, FilterOperator.EQUAL, creatorId);
+		query.addSort("creationDate", SortDirection.DESCENDING);
+
+		Cursor cursor = null != offset && !"".equals(offset) && !ZERO_OFFSET.equals(offset) ? Cursor.fromWebSafeString(offset) : null;
+		List<Artifact> artifacts = new ArrayList<Artifact>();
+		Date asOf = new Date();
+		boolean isExhausted = false;
+
+		while(!isExhausted && artifacts.size() < limit) {
+
+			int batchSize = (int) limit - artifacts.size();
+			FetchOptions fetchOptions = FetchOptions.Builder.withLimit(batchSize);
+
+			if(null != cursor) {
+
+				fetchOptions.startCursor(cursor);
+			}
+
+			QueryResultList<Entity> keyEntities = datastoreService.prepare(query).asQueryResultList(fetchOptions);
+
+			for(Artifact artifact : get(EntityMapper.keys(keyEntities))) {
+
+				if(Expiry.expiresAt(artifact.getExpirationDate()).after(asOf)) {
+
+					artifacts.add(artifact);
+				}
+			}
+
+			cursor = keyEntities.getCursor();
+			isExhausted = keyEntities.size() < batchSize;
+		}
+
+		PageableResults<Artifact> pageableResults = new PageableResults<Artifact>();
+		pageableResults.setResults(artifacts);
+		pageableResults.setOffset(null == cursor ? offset : cursor.toWebSafeString());
+
+		return pageableResults;
+	}
+
+	public PageableResults<Artifact> get(double latitude, double longitude, String offset, long limit) {
+
+		Location location = locationService.get(latitude, longitude);
+
+		return getAtLocations(null == location ? Collections.<Location>emptyList() : Collections.singletonList(location), offset, limit);
+	}
+
+	public PageableResults<Artifact> get(double latitude, double longitude, double radius, String offset, long limit) {
+
+		return getAtLocations(locationService.get(latitude, longitude, radius), offset, limit);
+	}
+
+	public PageableResults<Artifact> getAtLocations(List<Location> locations, String offset, long limit) {
+
+		return locationPages.get(locations, offset, limit);
+	}
+
+	/*
+	 * Returns a page of the unexpired artifacts at a location with a generated id, found
+	 * by the locations of the artifacts
+	 */
+	private PageableResults<Artifact> query(Key locationKey, String offset, long limit) {
+
+		Date asOf = Expiry.asOf(offset);
+		Cursor cursor = Expiry.cursor(offset);
+		FetchOptions fetchOptions = FetchOptions.Builder.withLimit((int) limit);
+
+		if(null != cursor) {
+
+			fetchOptions.startCursor(cursor);
+		}
+
+		Query query = unexpired(asOf).setKeysOnly();
+		query.addFilter("locations", FilterOperator.EQUAL, locationKey);
+
+		QueryResultList<Entity> keyEntities = datastoreService.prepare(query).asQueryResultList(fetchOptions);
+
+		PageableResults<Artifact> pageableResults = new PageableResults<Artifact>();
+		pageableResults.setResults(get(EntityMapper.keys(keyEntities)));
+		pageableResults.setOffset(Expiry.offset(asOf, keyEntities.getCursor()));
+
+		return pageableResults;
+	}
+
+	private Query unexpired(Date asOf) {
+
+		Query query = new Query(EntityMapper.ARTIFACT_KIND);
+		query.addFilter(Expiry.PROPERTY, FilterOperator.GREATER_THAN, asOf);
+
+		return query;
+	}
+
+	private List<Artifact> get(List<Key> keys) {
+
+		List<Artifact> artifacts = new ArrayList<Artifact>(keys.size());
+
+		for(Entity entity : EntityMapper.inOrder(keys, entityCache.get(keys))) {
+
+			artifacts.add(EntityMapper.toArtifact(entity));
+		}
+
+		return artifacts;
+	}
+}
@@ -0,0 +1,189 @@
+package org.artifactly.service.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.artifactly.service.geo.GeoHash;
+import org.artifactly.service.geo.GeoUtils;
+import org.artifactly.service.pojo.Location;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.inject.Inject;
+
+/*
+ * LocationService on the low-level datastore API. Queries are keys-only and the
+ * entities are loaded with one batch get and mapped directly, bypassing JDO.
+ */
+public class DatastoreLocationService implements LocationService {
+
+	private DatastoreService datastoreService = null;
+	private DatastoreService readDatastoreService = null;
+	private GeoCellQuery geoCellQuery = null;
+	private EntityCache entityCache = null;
+	private LocationAliases locationAliases = null;
+	private static final String ZERO_OFFSET = "0";
+	private static final long BATCH_SIZE = 100;
+
+	@Inject
+	public DatastoreLocationService(Manager manager, GeoCellQuery geoCellQuery, EntityCache entityCache, LocationAliases locationAliases) {
+
+		datastoreService = manager.getDatastoreService();
+		readDatastoreService = manager.getReadDatastoreService();
+		this.geoCellQuery = geoCellQuery;
+		this.entityCache = entityCache;
+		this.locationAliases = locationAliases;
+	}
+
+	public List<Location> getAll() {
+
+		List<Location> locations = new ArrayList<Location>();
+
+		for(Entity entity : readDatastoreService.prepare(new Query(EntityMapper.LOCATION_KIND)).asIterable()) {
+
+			locations.add(EntityMapper.toLocation(entity));
+		}
+
+		return locations;
+	}
+
+	public Iterable<Location> iterateAll() {
+
+		return new PagingIterable<Location>(BATCH_SIZE) {
+
+			@Override
+			protected PageableResults<Location> fetch(String offset, long limit) {
+
+				return get(offset, limit);
+			}
+		};
+	}
+
+	public PageableResults<Location> get(String offset, long limit) {
+
+		FetchOptions fetchOptions = FetchOptions.Builder.withLimit((int) limit);
+
+		if(null != offset && !"".equals(offset) && !ZERO_OFFSET.equals(offset)) {
+
+			fetchOptions.startCursor(Cursor.fromWebSafeString(offset));
+		}
+
+		Query query = new Query(EntityMapper.LOCATION_KIND).setKeysOnly();
+		QueryResultList<Entity> keyEntities = readDatastoreService.prepare(query).asQueryResultList(fetchOptions);
+
+		PageableResults<Location> pageableResults = new PageableResults<Location>();
+		pageableResults.setResults(get(EntityMapper.keys(keyEntities)));
+		pageableResults.setOffset(keyEntities.getCursor().toWebSafeString());
+
+		return pageableResults;
+	}
+
+	public Location get(double latitude, double longitude) {
+
+		Entity entity = entityCache.get(EntityMapper.locationKey(latitude, longitude));
+
+		if(null != entity) {
+
+			return EntityMapper.toLocation(entity);
+		}
+
+		// Locations created before the named keys are found by their aliases
+		Key legacyKey = locationAliases.get(latitude, longitude);
+		entity = null == legacyKey ? null : entityCache.get(legacyKey);
+
+		return null == entity ? null : EntityMapper.toLocation(entity);
+	}
+
+	public List<Location> get(double latitude, double longitude, double radius) {
+
+		Map<String, List<Location>> cells = get(GeoHash.cover(latitude, longitude, radius));
+
+		return GeoUtils.within(GeoCellQuery.merge(cells.values()), latitude, longitude, radius);
+	}
+
+	public Map<String, List<Location>> get(Set<String> cells) {
+
+		return geoCellQuery.get(cells);
+	}
+
+	public Map<String, List<Location>> get(Set<String> cells, int limit) {
+
+		return geoCellQuery.get(cells, limit);
+	}
+
+	/*
+	 * Returns the location at the coordinates if there is one, otherwise the location
+	 * is created. The named key is checked and written in one transaction, so concurrent
+	 * creates at the same place do not overwrite each other.
+	 */
+	public Location create(Location location) {
+
+		Location existingLocation = get(location.getLatitude(), location.getLongitude());
+
+		if(null != existingLocation) {
+
+			return existingLocation;
+		}
+
+		Key locationKey = EntityMapper.locationKey(location.getLatitude(), location.getLongitude());
+		Transaction transaction = datastoreService.beginTransaction();
+
+		try {
+
+			Entity entity = datastoreService.get(transaction, locationKey);
+			transaction.rollback();
+
+			return EntityMapper.toLocation(entity);
+
+		} catch (EntityNotFoundException e) {
+
+			location.setKey(locationKey);
+			location.setVersion(Versions.next());
+			Entity entity = EntityMapper.toEntity(location);
+			datastoreService.put(transaction, entity);
+
+			try {
+
+				transaction.commit();
+
+			} catch (ConcurrentModificationException concurrent) {
+
+				// Another request created the location first
+				return get(location.getLatitude(), location.getLongitude());
+			}
+
+			entityCache.written(Collections.singletonList(entity));
+			return location;
+
+		} finally {
+
+			if(transaction.isActive()) {
+
+				transaction.rollback();
+			}
+		}
+	}
+
+	private List<Location> get(List<Key> keys) {
+
+		List<Location> locations = new ArrayList<Location>(keys.size());
+
+		for(Entity entity : EntityMapper.inOrder(keys, entityCache.get(keys))) {
+
+			locations.add(EntityMapper.toLocation(entity));
+		}
+
+		return locations;
+	}
+}
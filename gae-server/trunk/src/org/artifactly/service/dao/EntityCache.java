@@ -0,0 +1,365 @@
+package org.artifactly.service.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+
+/*
+ * Cache of artifact and location entities by key: an LRU map of the instance in front
+ * of memcache in front of the datastore. The keys missing from both caches are read
+ * with one batch get. Writes go through to memcache, and entities read from the
+ * datastore are only added to memcache if it holds none, so a concurrent write is
+ * never overwritten by an older read.
+ *
+ * The entries of the instance are stored under the version stamp of their key in
+ * memcache, which every write of the key increments, so entries of other instances
+ * are refreshed from memcache after a write of the same entity and no other. A batch
+ * costs one memcache call for the stamps when all its entities are cached by the
+ * instance.
+ */
+public class EntityCache {
+
+	private static final Set<String> KINDS = new HashSet<String>(Arrays.asList(EntityMapper.ARTIFACT_KIND, EntityMapper.LOCATION_KIND));
+	private static final String STAMP_PREFIX = "stamp:";
+
+	// Deleted keys are not added again by reads that started before the delete
+	private static final long DELETE_LOCK_MILLIS = 1000;
+
+	private DatastoreService datastoreService = null;
+	private DatastoreService readDatastoreService = null;
+	private MemcacheService memcacheService = null;
+	private Expiration expiration = null;
+	private Map<Key, Cached> localEntries = null;
+	private AtomicLong localHits = new AtomicLong();
+	private AtomicLong memcacheHits = new AtomicLong();
+	private AtomicLong datastoreReads = new AtomicLong();
+
+	public EntityCache(Manager manager, final int size, int ttl) {
+
+		datastoreService = manager.getDatastoreService();
+		readDatastoreService = manager.getReadDatastoreService();
+		memcacheService = MemcacheServiceFactory.getMemcacheService("entity");
+		expiration = Expiration.byDeltaSeconds(ttl);
+
+		localEntries = new LinkedHashMap<Key, Cached>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Cached> eldest) {
+
+				return size() > size;
+			}
+		};
+	}
+
+	/*
+	 * Returns the entity of the key, or null if there is none
+	 */
+	public Entity get(Key key) {
+
+		return get(Arrays.asList(key)).get(key);
+	}
+
+	/*
+	 * Returns the entities found for the keys. Keys of other kinds than artifacts and
+	 * locations are read from the datastore.
+	 */
+	public Map<Key, Entity> get(Collection<Key> keys) {
+
+		Map<Key, Entity> entities = new HashMap<Key, Entity>();
+
+		if(keys.isEmpty()) {
+
+			return entities;
+		}
+
+		// The stamps are read first, so an entry cached by this batch is older than any later write
+		Map<Key, Long> stamps = getStamps(keys);
+		List<Key> missingKeys = new ArrayList<Key>();
+
+		synchronized(localEntries) {
+
+			for(Key key : keys) {
+
+				Cached cached = localEntries.get(key);
+
+				if(null != cached && cached.stamp.equals(stamps.get(key))) {
+
+					entities.put(key, cached.entity.clone());
+				}
+				else if(!entities.containsKey(key)) {
+
+					missingKeys.add(key);
+				}
+			}
+		}
+
+		localHits.addAndGet(entities.size());
+
+		if(missingKeys.isEmpty()) {
+
+			return entities;
+		}
+
+		Map<String, Key> memcacheKeys = new HashMap<String, Key>();
+
+		for(Key key : missingKeys) {
+
+			if(KINDS.contains(key.getKind())) {
+
+				memcacheKeys.put(KeyFactory.keyToString(key), key);
+			}
+		}
+
+		Map<Key, Entity> found = new HashMap<Key, Entity>();
+
+		for(Map.Entry<String, Object> entry : memcacheService.getAll(memcacheKeys.keySet()).entrySet()) {
+
+			found.put(memcacheKeys.get(entry.getKey()), (Entity) entry.getValue());
+		}
+
+		memcacheHits.addAndGet(found.size());
+		missingKeys.removeAll(found.keySet());
+
+		if(!missingKeys.isEmpty()) {
+
+			Map<Key, Entity> read = readDatastoreService.get(missingKeys);
+			datastoreReads.addAndGet(read.size());
+			memcacheService.putAll(toMemcache(read.values()), expiration, SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+			found.putAll(read);
+		}
+
+		cacheLocally(found.values(), stamps);
+		entities.putAll(found);
+
+		return entities;
+	}
+
+	/*
+	 * Writes the entities to the datastore and the caches
+	 */
+	public void put(List<Entity> entities) {
+
+		datastoreService.put(entities);
+		written(entities);
+	}
+
+	/*
+	 * Updates the caches with entities the caller has written, in a transaction or
+	 * with an asynchronous put that has completed
+	 */
+	public void written(Collection<Entity> entities) {
+
+		Map<String, Object> values = toMemcache(entities);
+
+		if(values.isEmpty()) {
+
+			return;
+		}
+
+		memcacheService.putAll(values, expiration);
+		cacheLocally(entities, incrementStamps(EntityMapper.keys(new ArrayList<Entity>(entities))));
+	}
+
+	/*
+	 * Removes the entities of the keys, which the caller has deleted, from the caches
+	 */
+	public void evict(Collection<Key> keys) {
+
+		List<String> memcacheKeys = new ArrayList<String>();
+
+		for(Key key : keys) {
+
+			if(KINDS.contains(key.getKind())) {
+
+				memcacheKeys.add(KeyFactory.keyToString(key));
+			}
+		}
+
+		if(memcacheKeys.isEmpty()) {
+
+			return;
+		}
+
+		memcacheService.deleteAll(memcacheKeys, DELETE_LOCK_MILLIS);
+		incrementStamps(keys);
+
+		synchronized(localEntries) {
+
+			localEntries.keySet().removeAll(keys);
+		}
+	}
+
+	public long getLocalHits() {
+
+		return localHits.get();
+	}
+
+	public long getMemcacheHits() {
+
+		return memcacheHits.get();
+	}
+
+	public long getDatastoreReads() {
+
+		return datastoreReads.get();
+	}
+
+	private void cacheLocally(Collection<Entity> entities, Map<Key, Long> stamps) {
+
+		synchronized(localEntries) {
+
+			for(Entity entity : entities) {
+
+				Long stamp = stamps.get(entity.getKey());
+
+				if(null != stamp) {
+
+					localEntries.put(entity.getKey(), new Cached(entity.clone(), stamp));
+				}
+			}
+		}
+	}
+
+	/*
+	 * Returns the stamps of the keys of cached kinds, read with one memcache call while
+	 * all of them exist. Lost stamps restart at the current time in microseconds, which
+	 * is ahead of any stamp handed out before, as a key is written far less than once
+	 * per microsecond.
+	 */
+	private Map<Key, Long> getStamps(Collection<Key> keys) {
+
+		Map<String, Key> stampKeys = stampKeys(keys);
+		Map<Key, Long> stamps = toStamps(memcacheService.getAll(stampKeys.keySet()), stampKeys);
+
+		if(stamps.size() == stampKeys.size()) {
+
+			return stamps;
+		}
+
+		Map<String, Object> lostStamps = new HashMap<String, Object>();
+		Long stamp = restartStamp();
+
+		for(Map.Entry<String, Key> entry : stampKeys.entrySet()) {
+
+			if(!stamps.containsKey(entry.getValue())) {
+
+				lostStamps.put(entry.getKey(), stamp);
+			}
+		}
+
+		// A stamp added by another request at the same time is read back instead
+		memcacheService.putAll(lostStamps, null, SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+		stamps.putAll(toStamps(memcacheService.getAll(lostStamps.keySet()), stampKeys));
+
+		return stamps;
+	}
+
+	private Map<Key, Long> incrementStamps(Collection<Key> keys) {
+
+		Map<String, Key> stampKeys = stampKeys(keys);
+		Map<Key, Long> stamps = new HashMap<Key, Long>();
+
+		if(stampKeys.isEmpty()) {
+
+			return stamps;
+		}
+
+		for(Map.Entry<String, Long> entry : memcacheService.incrementAll(stampKeys.keySet(), 1, restartStamp()).entrySet()) {
+
+			if(null != entry.getValue()) {
+
+				stamps.put(stampKeys.get(entry.getKey()), entry.getValue());
+			}
+		}
+
+		return stamps;
+	}
+
+	/*
+	 * Returns the stamps read from memcache by the keys they belong to. A stamp put by
+	 * getStamps is read as a Long, a stamp created by an increment as the String of its
+	 * value.
+	 */
+	private static Map<Key, Long> toStamps(Map<String, Object> values, Map<String, Key> stampKeys) {
+
+		Map<Key, Long> stamps = new HashMap<Key, Long>();
+
+		for(Map.Entry<String, Object> entry : values.entrySet()) {
+
+			if(null != entry.getValue()) {
+
+				stamps.put(stampKeys.get(entry.getKey()), Long.valueOf(entry.getValue().toString()));
+			}
+		}
+
+		return stamps;
+	}
+
+	private static Long restartStamp() {
+
+		return System.currentTimeMillis() * 1000;
+	}
+
+	/*
+	 * Returns the keys of cached kinds by the memcache keys of their stamps
+	 */
+	private Map<String, Key> stampKeys(Collection<Key> keys) {
+
+		Map<String, Key> stampKeys = new HashMap<String, Key>();
+
+		for(Key key : keys) {
+
+			if(KINDS.contains(key.getKind())) {
+
+				stampKeys.put(STAMP_PREFIX + KeyFactory.keyToString(key), key);
+			}
+		}
+
+		return stampKeys;
+	}
+
+	private Map<String, Object> toMemcache(Collection<Entity> entities) {
+
+		Map<String, Object> values = new HashMap<String, Object>();
+
+		for(Entity entity : entities) {
+
+			if(KINDS.contains(entity.getKind())) {
+
+				values.put(KeyFactory.keyToString(entity.getKey()), entity);
+			}
+		}
+
+		return values;
+	}
+
+	private static class Cached {
+
+		private Entity entity = null;
+		private Long stamp = null;
+
+		public Cached(Entity entity, Long stamp) {
+
+			this.entity = entity;
+			this.stamp = stamp;
+		}
+	}
+}
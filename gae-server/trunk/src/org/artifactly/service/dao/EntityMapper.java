@@ -0,0 +1,148 @@
+package org.artifactly.service.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.artifactly.service.pojo.Artifact;
+import org.artifactly.service.pojo.Location;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.users.User;
+
+/*
+ * Maps the persistence capable classes to low-level datastore entities. Kind
+ * and property names follow the default JDO mapping, so entities written here
+ * are read back by the JDO queries unchanged.
+ */
+public final class EntityMapper {
+
+	public static final String ARTIFACT_KIND = Artifact.class.getSimpleName();
+	public static final String LOCATION_KIND = Location.class.getSimpleName();
+
+	public static final String CREATOR_ID = "creatorId";
+
+	private static final double MICRO_DEGREES = 1000000;
+
+	private EntityMapper() {
+
+	}
+
+	/*
+	 * Returns the named key of the location at the coordinates. The coordinates are
+	 * quantized to micro degrees, about 10 cm, so a location is found by key at the
+	 * place it was created.
+	 */
+	public static Key locationKey(double latitude, double longitude) {
+
+		return KeyFactory.createKey(LOCATION_KIND, Math.round(latitude * MICRO_DEGREES) + "," + Math.round(longitude * MICRO_DEGREES));
+	}
+
+	public static String creatorId(User creator) {
+
+		return null == creator ? null : creator.getUserId();
+	}
+
+	public static Entity toEntity(Artifact artifact) {
+
+		Entity entity = null == artifact.getKey() ? new Entity(ARTIFACT_KIND) : new Entity(artifact.getKey());
+		entity.setProperty("name", artifact.getName());
+		entity.setProperty("creator", artifact.getCreator());
+		entity.setProperty(CREATOR_ID, creatorId(artifact.getCreator()));
+		entity.setProperty("creationDate", artifact.getCreationDate());
+		entity.setProperty("expirationDate", artifact.getExpirationDate());
+		entity.setProperty(Expiry.PROPERTY, Expiry.expiresAt(artifact.getExpirationDate()));
+		entity.setProperty("isPublic", artifact.getIsPublic());
+		entity.setProperty("locations", new ArrayList<Object>(artifact.getLocations()));
+		entity.setProperty(Versions.PROPERTY, artifact.getVersion());
+
+		return entity;
+	}
+
+	public static Entity toEntity(Location location) {
+
+		Entity entity = null == location.getKey() ? new Entity(LOCATION_KIND) : new Entity(location.getKey());
+		entity.setProperty("latitude", location.getLatitude());
+		entity.setProperty("longitude", location.getLongitude());
+		entity.setProperty("geocells", location.getGeocells());
+		entity.setProperty(Versions.PROPERTY, location.getVersion());
+
+		return entity;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static Artifact toArtifact(Entity entity) {
+
+		Artifact artifact = new Artifact((User) entity.getProperty("creator"),
+										 (String) entity.getProperty("name"),
+										 (Date) entity.getProperty("creationDate"),
+										 (Boolean) entity.getProperty("isPublic"));
+		artifact.setKey(entity.getKey());
+		artifact.setExpirationDate((Date) entity.getProperty("expirationDate"));
+		artifact.setVersion((Long) entity.getProperty(Versions.PROPERTY));
+
+		Collection<Key> locations = (Collection<Key>) entity.getProperty("locations");
+
+		if(null != locations) {
+
+			artifact.setLocations(new HashSet<Key>(locations));
+		}
+
+		return artifact;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static Location toLocation(Entity entity) {
+
+		Location location = new Location((Double) entity.getProperty("latitude"), (Double) entity.getProperty("longitude"));
+		location.setKey(entity.getKey());
+		location.setVersion((Long) entity.getProperty(Versions.PROPERTY));
+
+		List<String> geocells = (List<String>) entity.getProperty("geocells");
+
+		if(null != geocells) {
+
+			location.setGeocells(geocells);
+		}
+
+		return location;
+	}
+
+	public static List<Key> keys(List<Entity> entities) {
+
+		List<Key> keys = new ArrayList<Key>(entities.size());
+
+		for(Entity entity : entities) {
+
+			keys.add(entity.getKey());
+		}
+
+		return keys;
+	}
+
+	/*
+	 * Returns the entities of a batch get in the order of the keys, skipping keys
+	 * that were not found
+	 */
+	public static List<Entity> inOrder(List<Key> keys, Map<Key, Entity> entities) {
+
+		List<Entity> orderedEntities = new ArrayList<Entity>(entities.size());
+
+		for(Key key : keys) {
+
+			Entity entity = entities.get(key);
+
+			if(null != entity) {
+
+				orderedEntities.add(entity);
+			}
+		}
+
+		return orderedEntities;
+	}
+}
@@ -0,0 +1,119 @@
+package org.artifactly.service.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.inject.Inject;
+
+/*
+ * Deletes expired artifacts one batch at a time. An artifact is removed from the
+ * read models of its locations before it is deleted with its memberships, so a
+ * batch that fails half way is repeated from the same offset without leaving
+ * summaries of deleted artifacts behind. A tombstone is left for every deleted
+ * artifact, so synchronized clients delete it as well. The offset of the next batch
+ * is null once the sweep is complete.
+ */
+public class ExpiredArtifactSweeper {
+
+	private static final int BATCH_SIZE = 100;
+
+	private DatastoreService datastoreService = null;
+	private LocationArtifacts locationArtifacts = null;
+	private EntityCache entityCache = null;
+
+	@Inject
+	public ExpiredArtifactSweeper(Manager manager, LocationArtifacts locationArtifacts, EntityCache entityCache) {
+
+		datastoreService = manager.getDatastoreService();
+		this.locationArtifacts = locationArtifacts;
+		this.entityCache = entityCache;
+	}
+
+	/*
+	 * Deletes the next batch of artifacts that had expired when the sweep started and
+	 * returns their keys
+	 */
+	public PageableResults<Key> sweep(String offset) {
+
+		Date asOf = Expiry.asOf(offset);
+
+		Query query = new Query(EntityMapper.ARTIFACT_KIND);
+		query.addFilter(Expiry.PROPERTY, FilterOperator.LESS_THAN_OR_EQUAL, asOf);
+
+		QueryResultList<Entity> artifacts = datastoreService.prepare(query).asQueryResultList(fetchOptions(offset));
+
+		Set<Key> artifactKeys = new LinkedHashSet<Key>();
+		Set<Key> locationKeys = new LinkedHashSet<Key>();
+		List<Key> deletedKeys = new ArrayList<Key>();
+
+		for(Entity artifact : artifacts) {
+
+			artifactKeys.add(artifact.getKey());
+			deletedKeys.add(artifact.getKey());
+
+			for(Key locationKey : locations(artifact)) {
+
+				locationKeys.add(locationKey);
+				deletedKeys.add(LocationMembership.key(artifact.getKey(), locationKey));
+			}
+		}
+
+		if(!artifactKeys.isEmpty()) {
+
+			List<Entity> tombstones = new ArrayList<Entity>(artifactKeys.size());
+
+			for(Key artifactKey : artifactKeys) {
+
+				tombstones.add(ChangeLog.toTombstone(artifactKey));
+			}
+
+			locationArtifacts.remove(locationKeys, artifactKeys);
+			datastoreService.put(tombstones);
+			datastoreService.delete(deletedKeys);
+			entityCache.evict(deletedKeys);
+		}
+
+		return page(new ArrayList<Key>(artifactKeys), asOf, artifacts);
+	}
+
+	private FetchOptions fetchOptions(String offset) {
+
+		FetchOptions fetchOptions = FetchOptions.Builder.withLimit(BATCH_SIZE);
+		Cursor cursor = Expiry.cursor(offset);
+
+		if(null != cursor) {
+
+			fetchOptions.startCursor(cursor);
+		}
+
+		return fetchOptions;
+	}
+
+	private PageableResults<Key> page(List<Key> keys, Date asOf, QueryResultList<Entity> batch) {
+
+		PageableResults<Key> pageableResults = new PageableResults<Key>();
+		pageableResults.setResults(keys);
+		pageableResults.setOffset(batch.size() < BATCH_SIZE ? null : Expiry.offset(asOf, batch.getCursor()));
+
+		return pageableResults;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Collection<Key> locations(Entity artifact) {
+
+		Collection<Key> locations = (Collection<Key>) artifact.getProperty("locations");
+		return null == locations ? new ArrayList<Key>() : locations;
+	}
+}
@@ -0,0 +1,90 @@
+package org.artifactly.service.dao;
+
+import java.util.Date;
+
+import org.artifactly.service.pojo.Artifact;
+
+import com.google.appengine.api.datastore.Cursor;
+
+/*
+ * Expired artifacts are excluded with an inequality filter on the indexed expiresAt
+ * property, which is never null, artifacts without an expiration date expire at
+ * Artifact.NEVER_EXPIRES. The offset of a filtered page carries the time the first
+ * page was read, so every page of a listing runs the same query and its cursor
+ * stays valid. The time is kept within the last hour, the interval of the sweep of
+ * expired artifacts, so an offset can neither list artifacts expired long ago nor
+ * hide unexpired ones.
+ */
+public final class Expiry {
+
+	public static final String PROPERTY = "expiresAt";
+
+	private static final char SEPARATOR = '.';
+	private static final long MAX_AGE_MILLIS = 60 * 60 * 1000;
+
+	private Expiry() {
+
+	}
+
+	public static Date expiresAt(Date expirationDate) {
+
+		return null == expirationDate ? new Date(Artifact.NEVER_EXPIRES) : expirationDate;
+	}
+
+	/*
+	 * Returns false if the offset has a time or cursor that cannot be read
+	 */
+	public static boolean isValid(String offset) {
+
+		int separator = null == offset ? -1 : offset.indexOf(SEPARATOR);
+
+		if(-1 == separator) {
+
+			return true;
+		}
+
+		try {
+
+			Long.parseLong(offset.substring(0, separator));
+			Cursor.fromWebSafeString(offset.substring(separator + 1));
+			return true;
+
+		} catch (IllegalArgumentException e) {
+
+			return false;
+		}
+	}
+
+	/*
+	 * Returns the time the listing was started at, offsets without a time start a new listing
+	 */
+	public static Date asOf(String offset) {
+
+		int separator = null == offset ? -1 : offset.indexOf(SEPARATOR);
+		long now = System.currentTimeMillis();
+
+		if(-1 == separator) {
+
+			return new Date(now);
+		}
+
+		long asOf = Long.parseLong(offset.substring(0, separator));
+
+		return new Date(Math.min(now, Math.max(now - MAX_AGE_MILLIS, asOf)));
+	}
+
+	/*
+	 * Returns the cursor of the offset, or null at the start of a listing
+	 */
+	public static Cursor cursor(String offset) {
+
+		int separator = null == offset ? -1 : offset.indexOf(SEPARATOR);
+
+		return -1 == separator ? null : Cursor.fromWebSafeString(offset.substring(separator + 1));
+	}
+
+	public static String offset(Date asOf, Cursor cursor) {
+
+		return asOf.getTime() + String.valueOf(SEPARATOR) + cursor.toWebSafeString();
+	}
+}
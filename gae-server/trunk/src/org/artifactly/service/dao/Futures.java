@@ -0,0 +1,37 @@
+package org.artifactly.service.dao;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+public final class Futures {
+
+	private Futures() {
+
+	}
+
+	/*
+	 * Waits for the result of an asynchronous datastore call and rethrows its
+	 * failure unchecked, the way the synchronous call would have
+	 */
+	public static <T> T get(Future<T> future) {
+
+		try {
+
+			return future.get();
+
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+
+		} catch (ExecutionException e) {
+
+			if(e.getCause() instanceof RuntimeException) {
+
+				throw (RuntimeException) e.getCause();
+			}
+
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package org.artifactly.service.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.artifactly.service.pojo.Location;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.inject.Inject;
+
+/*
+ * Looks up the locations in a set of geocells. The keys-only queries of all cells
+ * are issued before any result is read, so they run concurrently and the lookup
+ * takes as long as the slowest cell. The locations are then loaded through the entity cache.
+ * The number of locations read per cell can be limited, which bounds the reads of a
+ * lookup by the number of cells.
+ */
+public class GeoCellQuery {
+
+	private static final int CHUNK_SIZE = 100;
+
+	private AsyncDatastoreService asyncDatastoreService = null;
+	private EntityCache entityCache = null;
+
+	@Inject
+	public GeoCellQuery(Manager manager, EntityCache entityCache) {
+
+		asyncDatastoreService = manager.getAsyncReadDatastoreService();
+		this.entityCache = entityCache;
+	}
+
+	public Map<String, List<Location>> get(Set<String> cells) {
+
+		return get(cells, Integer.MAX_VALUE);
+	}
+
+	public Map<String, List<Location>> get(Set<String> cells, int limit) {
+
+		// Preparing the iterator sends the first batch of each query without waiting for it
+		Map<String, QueryResultIterator<Entity>> pending = new LinkedHashMap<String, QueryResultIterator<Entity>>();
+
+		for(String cell : cells) {
+
+			Query query = new Query(EntityMapper.LOCATION_KIND).setKeysOnly();
+			query.addFilter("geocells", FilterOperator.EQUAL, cell);
+
+			pending.put(cell, asyncDatastoreService.prepare(query).asQueryResultIterator(FetchOptions.Builder.withLimit(limit).chunkSize(CHUNK_SIZE).prefetchSize(Math.min(limit, CHUNK_SIZE))));
+		}
+
+		Map<String, List<Key>> cellKeys = new HashMap<String, List<Key>>();
+		Set<Key> keys = new LinkedHashSet<Key>();
+
+		for(Map.Entry<String, QueryResultIterator<Entity>> entry : pending.entrySet()) {
+
+			List<Key> locationKeys = new ArrayList<Key>();
+
+			while(entry.getValue().hasNext()) {
+
+				locationKeys.add(entry.getValue().next().getKey());
+			}
+
+			cellKeys.put(entry.getKey(), locationKeys);
+			keys.addAll(locationKeys);
+		}
+
+		// A location found in several cells is loaded once
+		Map<Key, Entity> entities = entityCache.get(keys);
+		Map<String, List<Location>> locations = new HashMap<String, List<Location>>();
+
+		for(Map.Entry<String, List<Key>> entry : cellKeys.entrySet()) {
+
+			List<Location> cell = new ArrayList<Location>();
+
+			for(Entity entity : EntityMapper.inOrder(entry.getValue(), entities)) {
+
+				cell.add(EntityMapper.toLocation(entity));
+			}
+
+			locations.put(entry.getKey(), cell);
+		}
+
+		return locations;
+	}
+
+	/*
+	 * Merges the locations of several cells, each location is returned once
+	 */
+	public static List<Location> merge(Collection<List<Location>> cells) {
+
+		Map<Key, Location> locations = new LinkedHashMap<Key, Location>();
+
+		for(List<Location> cell : cells) {
+
+			for(Location location : cell) {
+
+				if(!locations.containsKey(location.getKey())) {
+
+					locations.put(location.getKey(), location);
+				}
+			}
+		}
+
+		return new ArrayList<Location>(locations.values());
+	}
+}
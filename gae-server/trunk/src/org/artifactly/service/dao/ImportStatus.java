@@ -0,0 +1,65 @@
+package org.artifactly.service.dao;
+
+import java.io.Serializable;
+
+/*
+ * Progress of a bulk import, counted in the chunks imported so far
+ */
+public class ImportStatus implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private long id = 0;
+	private long rows = 0;
+	private long chunks = 0;
+	private long importedChunks = 0;
+	private long importedRows = 0;
+
+	public ImportStatus() {
+
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public void setId(long id) {
+		this.id = id;
+	}
+
+	public long getRows() {
+		return rows;
+	}
+
+	public void setRows(long rows) {
+		this.rows = rows;
+	}
+
+	public long getChunks() {
+		return chunks;
+	}
+
+	public void setChunks(long chunks) {
+		this.chunks = chunks;
+	}
+
+	public long getImportedChunks() {
+		return importedChunks;
+	}
+
+	public void setImportedChunks(long importedChunks) {
+		this.importedChunks = importedChunks;
+	}
+
+	public long getImportedRows() {
+		return importedRows;
+	}
+
+	public void setImportedRows(long importedRows) {
+		this.importedRows = importedRows;
+	}
+
+	public boolean getDone() {
+		return importedChunks == chunks;
+	}
+}
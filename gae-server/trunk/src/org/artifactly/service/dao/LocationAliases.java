@@ -0,0 +1,109 @@
+package org.artifactly.service.dao;
+
+import java.util.List;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.inject.Inject;
+
+/*
+ * Finds the locations created with generated ids, before locations had named keys.
+ * The locations backfill stores an alias under the name of the named key of every
+ * such location, pointing to its generated key. Once the backfill has run and
+ * artifactly.locations.aliased is set, a legacy location is found with a get of its
+ * alias, until then with a query on its coordinates. Without any legacy location,
+ * as in a datastore created after the named keys, neither runs.
+ */
+public class LocationAliases {
+
+	public static final String KIND = "LocationAlias";
+
+	private static final String LOCATION = "location";
+	private static final boolean ALIASED = Boolean.getBoolean("artifactly.locations.aliased");
+
+	private DatastoreService readDatastoreService = null;
+	private volatile Boolean hasLegacyLocations = null;
+
+	@Inject
+	public LocationAliases(Manager manager) {
+
+		readDatastoreService = manager.getReadDatastoreService();
+	}
+
+	public static Entity toEntity(Entity legacyLocation) {
+
+		Key locationKey = EntityMapper.locationKey((Double) legacyLocation.getProperty("latitude"), (Double) legacyLocation.getProperty("longitude"));
+
+		Entity entity = new Entity(KeyFactory.createKey(KIND, locationKey.getName()));
+		entity.setUnindexedProperty(LOCATION, legacyLocation.getKey());
+
+		return entity;
+	}
+
+	/*
+	 * Returns the key of the location at the coordinates that was created with a
+	 * generated id, or null
+	 */
+	public Key get(double latitude, double longitude) {
+
+		if(!hasLegacyLocations()) {
+
+			return null;
+		}
+
+		if(ALIASED) {
+
+			try {
+
+				Entity alias = readDatastoreService.get(KeyFactory.createKey(KIND, EntityMapper.locationKey(latitude, longitude).getName()));
+				return (Key) alias.getProperty(LOCATION);
+
+			} catch (EntityNotFoundException e) {
+
+				return null;
+			}
+		}
+
+		Query query = new Query(EntityMapper.LOCATION_KIND).setKeysOnly();
+		query.addFilter("latitude", FilterOperator.EQUAL, latitude);
+		query.addFilter("longitude", FilterOperator.EQUAL, longitude);
+
+		for(Entity entity : readDatastoreService.prepare(query).asList(FetchOptions.Builder.withLimit(2))) {
+
+			if(null == entity.getKey().getName()) {
+
+				return entity.getKey();
+			}
+		}
+
+		return null;
+	}
+
+	/*
+	 * Returns whether any location has a generated id. Generated ids sort before names,
+	 * so the first location in key order has one if any has. Locations are no longer
+	 * created with generated ids, so the answer is looked up once per instance.
+	 */
+	private boolean hasLegacyLocations() {
+
+		Boolean hasLegacyLocations = this.hasLegacyLocations;
+
+		if(null == hasLegacyLocations) {
+
+			Query query = new Query(EntityMapper.LOCATION_KIND).setKeysOnly();
+			query.addSort(Entity.KEY_RESERVED_PROPERTY);
+
+			List<Entity> first = readDatastoreService.prepare(query).asList(FetchOptions.Builder.withLimit(1));
+			hasLegacyLocations = !first.isEmpty() && null == first.get(0).getKey().getName();
+			this.hasLegacyLocations = hasLegacyLocations;
+		}
+
+		return hasLegacyLocations;
+	}
+}
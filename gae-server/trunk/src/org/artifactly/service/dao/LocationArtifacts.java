@@ -0,0 +1,459 @@
+package org.artifactly.service.dao;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.artifactly.service.pojo.Artifact;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.apphosting.api.ApiProxy;
+import com.google.inject.Inject;
+
+/*
+ * Read model holding the summaries of all artifacts at a location, split into shards.
+ * Every shard is an entity group of its own and an artifact is added to the shard of
+ * its id, so writes at a busy location are spread over the shards. The artifacts at
+ * a location are read with a single batch get of its shards. The summaries are
+ * stored as parallel unindexed lists. Expired artifacts are skipped when a shard is
+ * read, as the shards are read by key, and removed by the expiry sweeper.
+ *
+ * A shard holds at most MAX_SHARD_BYTES of summaries, well below the entity size
+ * limit. A shard that would grow beyond it is marked full and its summaries dropped,
+ * the read model of the location is incomplete from then on and its artifacts are
+ * read from the memberships.
+ */
+public class LocationArtifacts {
+
+	public static final String KIND = "LocationArtifacts";
+	public static final int SHARDS = 8;
+
+	private static final int RETRIES = 3;
+
+	// The read model before sharding was a single child of the location
+	private static final long LEGACY_ID = 1;
+
+	private static final String KEYS = "keys";
+	private static final String NAMES = "names";
+	private static final String IS_PUBLIC = "isPublic";
+	private static final String CREATION_DATES = "creationDates";
+	private static final String EXPIRATION_DATES = "expirationDates";
+	private static final String IS_FULL = "isFull";
+
+	// Estimated size of a summary without its name: the key, the flag, the dates and the list overhead
+	private static final int SUMMARY_BYTES = 128;
+	private static final int MAX_SHARD_BYTES = 512 * 1024;
+
+	private DatastoreService datastoreService = null;
+	private DatastoreService readDatastoreService = null;
+
+	@Inject
+	public LocationArtifacts(Manager manager) {
+
+		datastoreService = manager.getDatastoreService();
+		readDatastoreService = manager.getReadDatastoreService();
+	}
+
+	public static Key key(Key locationKey, int shard) {
+
+		return KeyFactory.createKey(KIND, KeyFactory.keyToString(locationKey) + "#" + shard);
+	}
+
+	public static Key legacyKey(Key locationKey) {
+
+		return KeyFactory.createKey(locationKey, KIND, LEGACY_ID);
+	}
+
+	/*
+	 * Returns the unexpired artifacts of the locations with a complete read model. A
+	 * location created before the shards needs its old read model as well, locations
+	 * without a complete read model or with a full shard are missing from the result.
+	 */
+	public Map<Key, List<Artifact>> get(Collection<Key> locationKeys) {
+
+		Map<Key, Entity> entities = readDatastoreService.get(keys(locationKeys));
+		Map<Key, List<Artifact>> artifacts = new HashMap<Key, List<Artifact>>();
+		Date asOf = new Date();
+
+		for(Key locationKey : locationKeys) {
+
+			List<Artifact> artifactsAtLocation = new ArrayList<Artifact>();
+			Entity legacyEntity = entities.get(legacyKey(locationKey));
+
+			if(null != legacyEntity) {
+
+				artifactsAtLocation.addAll(toArtifacts(legacyEntity, locationKey, asOf));
+			}
+
+			boolean hasShards = false;
+			boolean hasFullShard = false;
+
+			for(int shard = 0; shard < SHARDS; shard++) {
+
+				Entity entity = entities.get(key(locationKey, shard));
+
+				if(null != entity) {
+
+					hasShards = true;
+					hasFullShard |= isFull(entity);
+					artifactsAtLocation.addAll(toArtifacts(entity, locationKey, asOf));
+				}
+			}
+
+			if(!hasFullShard && (null == locationKey.getName() ? null != legacyEntity : hasShards)) {
+
+				artifacts.put(locationKey, artifactsAtLocation);
+			}
+		}
+
+		return artifacts;
+	}
+
+	/*
+	 * Removes the artifacts from the read models of the locations. Only the shards
+	 * holding any of the artifacts are written, each in a transaction of its own.
+	 */
+	public void remove(Collection<Key> locationKeys, Set<Key> artifactKeys) {
+
+		for(Entity entity : readDatastoreService.get(keys(locationKeys)).values()) {
+
+			if(contains(entity, artifactKeys)) {
+
+				remove(entity.getKey(), artifactKeys);
+			}
+		}
+	}
+
+	/*
+	 * Returns the shard an artifact is added to. Artifact ids are allocated in sequence,
+	 * so consecutive artifacts at a location are added to different shards.
+	 */
+	public static int shard(Key artifactKey) {
+
+		return (int) (artifactKey.getId() % SHARDS);
+	}
+
+	/*
+	 * Adds the artifacts to a shard of the location's read model in one transaction.
+	 * Artifacts the shard holds already are skipped, so adding them again has no effect,
+	 * and nothing is added to a full shard. Returns whether the shard was changed.
+	 */
+	public boolean add(Key locationKey, int shard, List<Artifact> artifacts) {
+
+		Key key = key(locationKey, shard);
+
+		for(int attempt = 1; ; attempt++) {
+
+			Transaction transaction = datastoreService.beginTransaction();
+
+			try {
+
+				Entity entity = null;
+
+				try {
+
+					entity = datastoreService.get(transaction, key);
+
+				} catch (EntityNotFoundException e) {
+
+					// The shard is created with its first artifacts
+				}
+
+				if(null != entity && isFull(entity)) {
+
+					return false;
+				}
+
+				int size = null == entity ? 0 : values(entity, KEYS).size();
+
+				for(Artifact artifact : artifacts) {
+
+					entity = add(entity, locationKey, shard, artifact);
+				}
+
+				if(!isFull(entity) && size == values(entity, KEYS).size()) {
+
+					return false;
+				}
+
+				try {
+
+					datastoreService.put(transaction, entity);
+
+				} catch (RuntimeException e) {
+
+					if(!isTooLarge(e)) {
+
+						throw e;
+					}
+
+					// The summaries are larger than estimated and the datastore refused the shard
+					entity = full(entity.getKey());
+					datastoreService.put(transaction, entity);
+				}
+
+				transaction.commit();
+				return true;
+
+			} catch (ConcurrentModificationException e) {
+
+				if(attempt == RETRIES) {
+
+					throw e;
+				}
+
+			} finally {
+
+				if(transaction.isActive()) {
+
+					transaction.rollback();
+				}
+			}
+		}
+	}
+
+	/*
+	 * Adds the summary of the artifact to the shard entity, which is created if it is
+	 * null. Returns the entity, or a full shard when the summary does not fit.
+	 */
+	public static Entity add(Entity entity, Key locationKey, int shard, Artifact artifact) {
+
+		if(null == entity) {
+
+			entity = new Entity(key(locationKey, shard));
+		}
+
+		if(isFull(entity)) {
+
+			return entity;
+		}
+
+		List<Key> keys = list(entity, KEYS);
+
+		if(!keys.contains(artifact.getKey())) {
+
+			if(size(entity) + size(artifact.getName()) > MAX_SHARD_BYTES) {
+
+				return full(entity.getKey());
+			}
+
+			List<Date> expirationDates = expirationDates(entity, keys.size());
+
+			keys.add(artifact.getKey());
+			list(entity, NAMES).add(artifact.getName());
+			list(entity, IS_PUBLIC).add(artifact.getIsPublic());
+			list(entity, CREATION_DATES).add(artifact.getCreationDate());
+			expirationDates.add(artifact.getExpirationDate());
+		}
+
+		return entity;
+	}
+
+	public static List<Artifact> toArtifacts(Entity entity, Key locationKey, Date asOf) {
+
+		List<Key> keys = values(entity, KEYS);
+		List<String> names = values(entity, NAMES);
+		List<Boolean> isPublic = values(entity, IS_PUBLIC);
+		List<Date> creationDates = values(entity, CREATION_DATES);
+		List<Date> expirationDates = values(entity, EXPIRATION_DATES);
+
+		List<Artifact> artifacts = new ArrayList<Artifact>(keys.size());
+
+		for(int index = 0; index < keys.size(); index++) {
+
+			// Summaries written before the expiration dates have none
+			Date expirationDate = index < expirationDates.size() ? expirationDates.get(index) : null;
+
+			if(!Expiry.expiresAt(expirationDate).after(asOf)) {
+
+				continue;
+			}
+
+			Artifact artifact = new Artifact(null, names.get(index), creationDates.get(index), isPublic.get(index));
+			artifact.setKey(keys.get(index));
+			artifact.setExpirationDate(expirationDate);
+			artifact.getLocations().add(locationKey);
+			artifacts.add(artifact);
+		}
+
+		return artifacts;
+	}
+
+	private List<Key> keys(Collection<Key> locationKeys) {
+
+		List<Key> keys = new ArrayList<Key>(locationKeys.size() * (SHARDS + 1));
+
+		for(Key locationKey : locationKeys) {
+
+			if(null == locationKey.getName()) {
+
+				keys.add(legacyKey(locationKey));
+			}
+
+			for(int shard = 0; shard < SHARDS; shard++) {
+
+				keys.add(key(locationKey, shard));
+			}
+		}
+
+		return keys;
+	}
+
+	private void remove(Key key, Set<Key> artifactKeys) {
+
+		for(int attempt = 1; ; attempt++) {
+
+			Transaction transaction = datastoreService.beginTransaction();
+
+			try {
+
+				Entity entity = datastoreService.get(transaction, key);
+				List<Key> keys = list(entity, KEYS);
+				List<String> names = list(entity, NAMES);
+				List<Boolean> isPublic = list(entity, IS_PUBLIC);
+				List<Date> creationDates = list(entity, CREATION_DATES);
+				List<Date> expirationDates = expirationDates(entity, keys.size());
+
+				for(int index = keys.size() - 1; index >= 0; index--) {
+
+					if(artifactKeys.contains(keys.get(index))) {
+
+						keys.remove(index);
+						names.remove(index);
+						isPublic.remove(index);
+						creationDates.remove(index);
+						expirationDates.remove(index);
+					}
+				}
+
+				datastoreService.put(transaction, entity);
+				transaction.commit();
+				return;
+
+			} catch (EntityNotFoundException e) {
+
+				return;
+
+			} catch (ConcurrentModificationException e) {
+
+				if(attempt == RETRIES) {
+
+					throw e;
+				}
+
+			} finally {
+
+				if(transaction.isActive()) {
+
+					transaction.rollback();
+				}
+			}
+		}
+	}
+
+	/*
+	 * The datastore refuses an entity over its size limit, the API an oversized request
+	 */
+	private static boolean isTooLarge(RuntimeException e) {
+
+		return e instanceof IllegalArgumentException || e instanceof ApiProxy.RequestTooLargeException;
+	}
+
+	private static boolean isFull(Entity entity) {
+
+		return Boolean.TRUE.equals(entity.getProperty(IS_FULL));
+	}
+
+	/*
+	 * Returns a full shard, which keeps no summaries as the location is read from its memberships
+	 */
+	private static Entity full(Key key) {
+
+		Entity entity = new Entity(key);
+		entity.setUnindexedProperty(IS_FULL, true);
+
+		return entity;
+	}
+
+	private static int size(Entity entity) {
+
+		int size = 0;
+
+		for(String name : LocationArtifacts.<String>values(entity, NAMES)) {
+
+			size += size(name);
+		}
+
+		return size;
+	}
+
+	private static int size(String name) {
+
+		try {
+
+			return SUMMARY_BYTES + (null == name ? 0 : name.getBytes("UTF-8").length);
+
+		} catch (UnsupportedEncodingException e) {
+
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static boolean contains(Entity entity, Set<Key> artifactKeys) {
+
+		for(Key key : LocationArtifacts.<Key>values(entity, KEYS)) {
+
+			if(artifactKeys.contains(key)) {
+
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/*
+	 * Returns the extendable expiration dates padded to the number of summaries, the
+	 * summaries written before the expiration dates have none
+	 */
+	private static List<Date> expirationDates(Entity entity, int size) {
+
+		List<Date> expirationDates = list(entity, EXPIRATION_DATES);
+
+		while(expirationDates.size() < size) {
+
+			expirationDates.add(null);
+		}
+
+		return expirationDates;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> List<T> values(Entity entity, String property) {
+
+		List<T> values = (List<T>) entity.getProperty(property);
+		return null == values ? new ArrayList<T>() : values;
+	}
+
+	/*
+	 * Returns a list of the property values which is stored in the entity and can be extended
+	 */
+	private static <T> List<T> list(Entity entity, String property) {
+
+		List<T> values = new ArrayList<T>(LocationArtifacts.<T>values(entity, property));
+		entity.setUnindexedProperty(property, values);
+
+		return values;
+	}
+}
@@ -0,0 +1,97 @@
+package org.artifactly.service.dao;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.artifactly.service.pojo.Artifact;
+import org.artifactly.service.pojo.Location;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.inject.Inject;
+
+/*
+ * Join kind relating artifacts to locations. A membership is a child of its artifact,
+ * so it is written with the artifact and adding an artifact never writes to the
+ * location's entity group. The artifacts at a location are found with a keys-only
+ * query on the indexed location, the artifact key is the parent of the result.
+ * The membership carries the expiration of its artifact, so memberships of expired
+ * artifacts are excluded by the query. It also carries whether its artifact is public
+ * and the geocells and coordinates of its location, for the public feed.
+ */
+public class LocationMembership {
+
+	public static final String KIND = "LocationMembership";
+	public static final String LOCATION = "location";
+	public static final String IS_PUBLIC = "isPublic";
+	public static final String GEOCELLS = "geocells";
+	public static final String LATITUDE = "latitude";
+	public static final String LONGITUDE = "longitude";
+
+	private DatastoreService datastoreService = null;
+
+	@Inject
+	public LocationMembership(Manager manager) {
+
+		datastoreService = manager.getReadDatastoreService();
+	}
+
+	public static Key key(Key artifactKey, Key locationKey) {
+
+		return KeyFactory.createKey(artifactKey, KIND, KeyFactory.keyToString(locationKey));
+	}
+
+	public static Entity toEntity(Artifact artifact, Location location) {
+
+		Entity entity = new Entity(key(artifact.getKey(), location.getKey()));
+		entity.setProperty(LOCATION, location.getKey());
+		entity.setProperty(Expiry.PROPERTY, Expiry.expiresAt(artifact.getExpirationDate()));
+		entity.setProperty(IS_PUBLIC, Boolean.TRUE.equals(artifact.getIsPublic()));
+		entity.setProperty(GEOCELLS, location.getGeocells());
+		entity.setUnindexedProperty(LATITUDE, location.getLatitude());
+		entity.setUnindexedProperty(LONGITUDE, location.getLongitude());
+
+		return entity;
+	}
+
+	/*
+	 * Returns a page of the keys of the unexpired artifacts at the location
+	 */
+	public PageableResults<Key> getArtifactKeys(Key locationKey, String offset, long limit) {
+
+		Date asOf = Expiry.asOf(offset);
+		Cursor cursor = Expiry.cursor(offset);
+		FetchOptions fetchOptions = FetchOptions.Builder.withLimit((int) limit);
+
+		if(null != cursor) {
+
+			fetchOptions.startCursor(cursor);
+		}
+
+		Query query = new Query(KIND).setKeysOnly();
+		query.addFilter(LOCATION, FilterOperator.EQUAL, locationKey);
+		query.addFilter(Expiry.PROPERTY, FilterOperator.GREATER_THAN, asOf);
+
+		QueryResultList<Entity> memberships = datastoreService.prepare(query).asQueryResultList(fetchOptions);
+		List<Key> artifactKeys = new ArrayList<Key>(memberships.size());
+
+		for(Entity membership : memberships) {
+
+			artifactKeys.add(membership.getKey().getParent());
+		}
+
+		PageableResults<Key> pageableResults = new PageableResults<Key>();
+		pageableResults.setResults(artifactKeys);
+		pageableResults.setOffset(Expiry.offset(asOf, memberships.getCursor()));
+
+		return pageableResults;
+	}
+}
@@ -0,0 +1,192 @@
+package org.artifactly.service.dao;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.artifactly.service.pojo.Artifact;
+import org.artifactly.service.pojo.Location;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+
+/*
+ * Pages through the artifacts at a list of locations, in the order of the locations.
+ * A location whose complete read model fits into the rest of the page is read from
+ * it, any other location is paged through its memberships with their cursor. The
+ * offset of a page is the index of the location to continue at, followed by the
+ * membership offset within that location when the page ended in the middle of it.
+ */
+public abstract class LocationPages {
+
+	private static final char SEPARATOR = ':';
+
+	// Read models are read for this many locations at a time
+	private static final int READ_MODEL_BATCH = 20;
+
+	private LocationArtifacts locationArtifacts = null;
+	private LocationMembership locationMembership = null;
+	private EntityCache entityCache = null;
+
+	public LocationPages(LocationArtifacts locationArtifacts, LocationMembership locationMembership, EntityCache entityCache) {
+
+		this.locationArtifacts = locationArtifacts;
+		this.locationMembership = locationMembership;
+		this.entityCache = entityCache;
+	}
+
+	/*
+	 * Returns a page of the unexpired artifacts at a location with a generated id, which
+	 * predates the memberships. The offset is an Expiry offset.
+	 */
+	protected abstract PageableResults<Artifact> query(Key locationKey, String offset, long limit);
+
+	/*
+	 * Returns false if the offset is not the offset of a page of artifacts at locations
+	 */
+	public static boolean isValid(String offset) {
+
+		if(null == offset || 0 == offset.length()) {
+
+			return true;
+		}
+
+		int separator = offset.indexOf(SEPARATOR);
+
+		try {
+
+			if(Integer.parseInt(-1 == separator ? offset : offset.substring(0, separator)) < 0) {
+
+				return false;
+			}
+
+		} catch (NumberFormatException e) {
+
+			return false;
+		}
+
+		return -1 == separator || Expiry.isValid(offset.substring(separator + 1));
+	}
+
+	/*
+	 * Returns a page of the artifacts at the locations. An artifact at several locations
+	 * is returned at the first of them on the page. The offset of the last page is null.
+	 */
+	public PageableResults<Artifact> get(List<Location> locations, String offset, long limit) {
+
+		int index = index(offset);
+		String locationOffset = locationOffset(offset);
+		Map<Key, List<Artifact>> readModels = new HashMap<Key, List<Artifact>>();
+		int readUntil = index;
+
+		Map<Key, Artifact> artifacts = new LinkedHashMap<Key, Artifact>();
+		String nextOffset = null;
+
+		for(; index < locations.size() && artifacts.size() < limit; index++) {
+
+			if(index == readUntil) {
+
+				readUntil = Math.min(locations.size(), index + READ_MODEL_BATCH);
+				readModels = locationArtifacts.get(keys(locations.subList(index, readUntil)));
+			}
+
+			Key locationKey = locations.get(index).getKey();
+			List<Artifact> readModel = null == locationOffset ? readModels.get(locationKey) : null;
+
+			if(null != readModel && artifacts.size() + readModel.size() <= limit) {
+
+				add(artifacts, readModel);
+				continue;
+			}
+
+			long pageLimit = limit - artifacts.size();
+			PageableResults<Artifact> page = fetch(locationKey, locationOffset, pageLimit);
+			add(artifacts, page.getResults());
+			locationOffset = null;
+
+			if(page.getResults().size() == pageLimit) {
+
+				// The location may hold more artifacts, the next page continues within it
+				nextOffset = String.valueOf(index) + SEPARATOR + page.getOffset();
+				break;
+			}
+		}
+
+		if(null == nextOffset && index < locations.size()) {
+
+			nextOffset = String.valueOf(index);
+		}
+
+		PageableResults<Artifact> pageableResults = new PageableResults<Artifact>();
+		pageableResults.setResults(new ArrayList<Artifact>(artifacts.values()));
+		pageableResults.setOffset(nextOffset);
+
+		return pageableResults;
+	}
+
+	private PageableResults<Artifact> fetch(Key locationKey, String offset, long limit) {
+
+		if(null == locationKey.getName()) {
+
+			return query(locationKey, offset, limit);
+		}
+
+		PageableResults<Key> artifactKeys = locationMembership.getArtifactKeys(locationKey, offset, limit);
+		List<Artifact> artifacts = new ArrayList<Artifact>(artifactKeys.getResults().size());
+
+		for(Entity entity : EntityMapper.inOrder(artifactKeys.getResults(), entityCache.get(artifactKeys.getResults()))) {
+
+			artifacts.add(EntityMapper.toArtifact(entity));
+		}
+
+		PageableResults<Artifact> pageableResults = new PageableResults<Artifact>();
+		pageableResults.setResults(artifacts);
+		pageableResults.setOffset(artifactKeys.getOffset());
+
+		return pageableResults;
+	}
+
+	private static void add(Map<Key, Artifact> artifacts, List<Artifact> artifactsAtLocation) {
+
+		for(Artifact artifact : artifactsAtLocation) {
+
+			if(!artifacts.containsKey(artifact.getKey())) {
+
+				artifacts.put(artifact.getKey(), artifact);
+			}
+		}
+	}
+
+	private static List<Key> keys(List<Location> locations) {
+
+		List<Key> keys = new ArrayList<Key>(locations.size());
+
+		for(Location location : locations) {
+
+			keys.add(location.getKey());
+		}
+
+		return keys;
+	}
+
+	private static int index(String offset) {
+
+		if(null == offset || 0 == offset.length()) {
+
+			return 0;
+		}
+
+		int separator = offset.indexOf(SEPARATOR);
+
+		return Integer.parseInt(-1 == separator ? offset : offset.substring(0, separator));
+	}
+
+	private static String locationOffset(String offset) {
+
+		int separator = null == offset ? -1 : offset.indexOf(SEPARATOR);
+
+		return -1 == separator ? null : offset.substring(separator + 1);
+	}
+}
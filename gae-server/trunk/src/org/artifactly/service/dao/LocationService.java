@@ -1,15 +1,26 @@
 package org.artifactly.service.dao;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.artifactly.service.pojo.Location;
 
 public interface LocationService {
 
 	public List<Location> getAll();
 	
+	public Iterable<Location> iterateAll();
+	
 	public PageableResults<Location> get(String offset, long limit);
 	
 	public Location get(double latitude, double longitude);
 	
+	public List<Location> get(double latitude, double longitude, double radius);
+	
+	public Map<String, List<Location>> get(Set<String> cells);
+	
+	public Map<String, List<Location>> get(Set<String> cells, int limit);
+	
 	public Location create(Location location);
 }
@@ -1,33 +1,44 @@
 package org.artifactly.service.dao;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import javax.jdo.JDOObjectNotFoundException;
 import javax.jdo.PersistenceManager;
 import javax.jdo.PersistenceManagerFactory;
 import javax.jdo.Query;
+import javax.jdo.Transaction;
 
-import org.artifactly.service.ioc.ServiceModule;
+import org.artifactly.service.geo.GeoHash;
+import org.artifactly.service.geo.GeoUtils;
 import org.artifactly.service.pojo.Location;
 import org.datanucleus.store.appengine.query.JDOCursorHelper;
 
 import com.google.appengine.api.datastore.Cursor;
-import com.google.inject.Guice;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
 import com.google.inject.Inject;
-import com.google.inject.Injector;
 
 public class LocationServiceImpl implements LocationService {
 
 	private PersistenceManagerFactory persistenceManagerFactory = null;
-	private Injector injector = Guice.createInjector(new ServiceModule());
+	private GeoCellQuery geoCellQuery = null;
+	private EntityCache entityCache = null;
+	private LocationAliases locationAliases = null;
 	private static final String ZERO_OFFSET = "0";
 	private static final int ZERO = 0;
+	private static final long BATCH_SIZE = 100;
 
 	@Inject
-	public LocationServiceImpl() {
+	public LocationServiceImpl(Manager manager, GeoCellQuery geoCellQuery, EntityCache entityCache, LocationAliases locationAliases) {
 
-		persistenceManagerFactory = injector.getInstance(Manager.class).getFactory();
+		persistenceManagerFactory = manager.getFactory();
+		this.geoCellQuery = geoCellQuery;
+		this.entityCache = entityCache;
+		this.locationAliases = locationAliases;
 	}
 
 	public List<Location> getAll() {
@@ -51,6 +62,19 @@ public class LocationServiceImpl implements LocationService {
 		return locations;
 	}
 
+	@Override
+	public Iterable<Location> iterateAll() {
+
+		return new PagingIterable<Location>(BATCH_SIZE) {
+
+			@Override
+			protected PageableResults<Location> fetch(String offset, long limit) {
+
+				return get(offset, limit);
+			}
+		};
+	}
+
 	@Override
 	public PageableResults<Location> get(String offset, long limit) {
 
@@ -88,48 +112,99 @@ public class LocationServiceImpl implements LocationService {
 		return pageableResults;
 	}
 
+	/*
+	 * Returns the location at the coordinates if there is one, otherwise the location
+	 * is created. The named key is checked and written in one transaction, so concurrent
+	 * creates at the same place do not overwrite each other.
+	 */
 	@Override
 	public Location create(Location location) {
 
+		Location existingLocation = get(location.getLatitude(), location.getLongitude());
+
+		if(null != existingLocation) {
+
+			return existingLocation;
+		}
+
 		PersistenceManager persistenceManager = persistenceManagerFactory.getPersistenceManager();
+		Transaction transaction = persistenceManager.currentTransaction();
 		Location persistedLocation = null;
+		boolean created = false;
 
 		try {
 
-			persistedLocation = persistenceManager.makePersistent(location);
+			transaction.begin();
+
+			try {
+
+				persistedLocation = persistenceManager.getObjectById(Location.class, EntityMapper.locationKey(location.getLatitude(), location.getLongitude()));
+
+			} catch (JDOObjectNotFoundException e) {
+
+				location.setKey(EntityMapper.locationKey(location.getLatitude(), location.getLongitude()));
+				location.setVersion(Versions.next());
+				persistedLocation = persistenceManager.makePersistent(location);
+				created = true;
+			}
+
+			transaction.commit();
 			persistenceManager.makeTransient(persistedLocation);
 
 		} finally {
 
+			if(transaction.isActive()) {
+
+				transaction.rollback();
+			}
+
 			persistenceManager.close();
 		}
 
+		if(created) {
+
+			entityCache.written(Collections.singletonList(EntityMapper.toEntity(persistedLocation)));
+		}
+
 		return persistedLocation;
 	}
 
 	@Override
 	public Location get(double latitude, double longitude) {
 
-		PersistenceManager persistenceManager = persistenceManagerFactory.getPersistenceManager();
-		Query query = persistenceManager.newQuery(Location.class);
-		query.setFilter("latitude == latitudeParam && longitude == longitudeParam");
-		query.declareParameters("double latitudeParam, double longitudeParam");
-
-		try {
+		Entity entity = entityCache.get(EntityMapper.locationKey(latitude, longitude));
 
-			List<Location> persistedLocations = (List<Location>) query.execute(latitude, longitude);
+		if(null != entity) {
 
-			if(persistedLocations.size() > 0) {
-				
-				persistenceManager.makeTransientAll(persistedLocations);
-				return persistedLocations.get(0);
-			}
+			return EntityMapper.toLocation(entity);
 		}
-		finally {
 
-			persistenceManager.close();
-		}
+		// Locations created before the named keys are found by their aliases
+		Key legacyKey = locationAliases.get(latitude, longitude);
+		entity = null == legacyKey ? null : entityCache.get(legacyKey);
+
+		return null == entity ? null : EntityMapper.toLocation(entity);
+	}
+
+	@Override
+	public List<Location> get(double latitude, double longitude, double radius) {
+
+		// Only the cells covering the radius are queried, the exact distance is checked afterwards
+		Map<String, List<Location>> cells = get(GeoHash.cover(latitude, longitude, radius));
+		
+		return GeoUtils.within(GeoCellQuery.merge(cells.values()), latitude, longitude, radius);
+	}
+
+	@Override
+	public Map<String, List<Location>> get(Set<String> cells) {
+
+		// The cell queries run concurrently on the low-level API instead of one JDO query after another
+		return geoCellQuery.get(cells);
+	}
+
+	@Override
+	public Map<String, List<Location>> get(Set<String> cells, int limit) {
 
-		return null;
+		return geoCellQuery.get(cells, limit);
 	}
 }
@@ -2,7 +2,22 @@ package org.artifactly.service.dao;
 
 import javax.jdo.PersistenceManagerFactory;
 
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreService;
+
 public interface Manager {
 
 	public PersistenceManagerFactory getFactory();
+	
+	public DatastoreService getDatastoreService();
+	
+	public AsyncDatastoreService getAsyncDatastoreService();
+
+	/*
+	 * Datastore services whose calls fail with a DatastoreTimeoutException after the
+	 * read deadline, for the queries and gets of requests
+	 */
+	public DatastoreService getReadDatastoreService();
+
+	public AsyncDatastoreService getAsyncReadDatastoreService();
 }
@@ -1,13 +1,31 @@
 package org.artifactly.service.dao;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
 import javax.jdo.JDOHelper;
 import javax.jdo.PersistenceManagerFactory;
 
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceConfig;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.inject.Inject;
 
 public class ManagerImpl implements Manager {
 
-	private static final PersistenceManagerFactory persistenceManagerFactory = JDOHelper.getPersistenceManagerFactory("transactions-optional");
+	private static final Logger logger = Logger.getLogger(ManagerImpl.class.getName());
+
+	// Read deadline in milliseconds, configured through the system properties in appengine-web.xml
+	private static final int READ_DEADLINE = Integer.getInteger("artifactly.datastore.read.deadline", 3000);
+
+	private static final PersistenceManagerFactory persistenceManagerFactory = createFactory();
+	private static final DatastoreService datastoreService = DatastoreServiceFactory.getDatastoreService();
+	private static final AsyncDatastoreService asyncDatastoreService = DatastoreServiceFactory.getAsyncDatastoreService();
+	private static final DatastoreServiceConfig readConfig = DatastoreServiceConfig.Builder.withDeadline(READ_DEADLINE / 1000.0);
+	private static final DatastoreService readDatastoreService = DatastoreServiceFactory.getDatastoreService(readConfig);
+	private static final AsyncDatastoreService asyncReadDatastoreService = DatastoreServiceFactory.getAsyncDatastoreService(readConfig);
 
 	@Inject
 	public ManagerImpl() {
@@ -18,4 +36,37 @@ public class ManagerImpl implements Manager {
 		
 		return persistenceManagerFactory;
 	}
+
+	public DatastoreService getDatastoreService() {
+		
+		return datastoreService;
+	}
+
+	public AsyncDatastoreService getAsyncDatastoreService() {
+		
+		return asyncDatastoreService;
+	}
+
+	public DatastoreService getReadDatastoreService() {
+
+		return readDatastoreService;
+	}
+
+	public AsyncDatastoreService getAsyncReadDatastoreService() {
+
+		return asyncReadDatastoreService;
+	}
+	
+	private static PersistenceManagerFactory createFactory() {
+		
+		long start = System.currentTimeMillis();
+		// JDO reads are given the same deadline, writes keep the default one
+		Map<String, String> overrides = new HashMap<String, String>();
+		overrides.put("javax.jdo.option.DatastoreReadTimeoutMillis", String.valueOf(READ_DEADLINE));
+
+		PersistenceManagerFactory factory = JDOHelper.getPersistenceManagerFactory(overrides, "transactions-optional");
+		logger.info("PersistenceManagerFactory created in " + (System.currentTimeMillis() - start) + " ms");
+		
+		return factory;
+	}
 }
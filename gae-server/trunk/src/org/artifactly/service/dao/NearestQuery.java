@@ -0,0 +1,295 @@
+package org.artifactly.service.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.artifactly.service.geo.GeoHash;
+import org.artifactly.service.geo.GeoUtils;
+import org.artifactly.service.pojo.Artifact;
+import org.artifactly.service.pojo.Location;
+
+import com.google.appengine.api.datastore.Key;
+import com.google.inject.Inject;
+
+/*
+ * Looks up the k artifacts nearest to a coordinate. The geocells around the cell of
+ * the coordinate are searched in expanding rings, and the nearest artifacts found so
+ * far are kept in a max-heap bounded by k. The search stops once the k-th distance is
+ * no larger than the distance to the nearest point outside the searched cells, so
+ * its cost depends on k and the density around the coordinate. After MAX_RINGS rings
+ * the search continues at the next coarser precision, which reaches sparse areas in
+ * a few steps.
+ */
+public class NearestQuery {
+
+	// Cells of about 150 m by 150 m
+	private static final int START_PRECISION = 7;
+	private static final int MAX_RINGS = 2;
+	private static final int MAX_LOCATIONS_PER_CELL = 100;
+	private static final int MAX_FINER_CELLS = 200;
+
+	private LocationService locationService = null;
+	private ArtifactService artifactService = null;
+
+	@Inject
+	public NearestQuery(LocationService locationService, ArtifactService artifactService) {
+
+		this.locationService = locationService;
+		this.artifactService = artifactService;
+	}
+
+	public List<Artifact> get(double latitude, double longitude, int k) {
+
+		Candidates candidates = new Candidates(k);
+		Map<Key, Double> locationDistances = new HashMap<Key, Double>();
+
+		int finerCells = 0;
+		int precision = START_PRECISION;
+		int innerRing = 0;
+		int ring = 0;
+
+		while(true) {
+
+			Set<String> cells = new LinkedHashSet<String>();
+
+			for(int cellRing = innerRing; cellRing <= ring; cellRing++) {
+
+				cells.addAll(GeoHash.ring(latitude, longitude, precision, cellRing));
+			}
+
+			finerCells += search(cells, latitude, longitude, candidates, locationDistances, MAX_FINER_CELLS - finerCells);
+
+			double outside = distanceOutside(latitude, longitude, precision, ring);
+
+			if(Double.isInfinite(outside) || candidates.getKthDistance() <= outside) {
+
+				break;
+			}
+
+			if(ring < MAX_RINGS || GeoHash.MIN_PRECISION == precision) {
+
+				ring++;
+				innerRing = ring;
+			}
+			else {
+
+				// The coarser cell of the coordinate and its ring cover all the cells searched so far
+				precision--;
+				innerRing = 0;
+				ring = 1;
+			}
+		}
+
+		return candidates.getNearest();
+	}
+
+	/*
+	 * Reads the locations in the cells and offers their artifacts. A cell holding more
+	 * than MAX_LOCATIONS_PER_CELL locations may hold nearer ones than those read, so
+	 * its finer cells are read as well, unless they are farther than the k-th distance.
+	 * Once the budget of finer cells is spent no more are read, and the result is
+	 * approximate. Returns the number of finer cells read.
+	 */
+	private int search(Set<String> cells, final double latitude, final double longitude, Candidates candidates, Map<Key, Double> locationDistances, int budget) {
+
+		int finerCellCount = 0;
+
+		while(!cells.isEmpty()) {
+
+			Map<String, List<Location>> cellLocations = locationService.get(cells, MAX_LOCATIONS_PER_CELL);
+			List<Location> locations = new ArrayList<Location>();
+
+			// Coarser cells hold the cells searched before, their locations are only counted once
+			for(Location location : GeoCellQuery.merge(cellLocations.values())) {
+
+				if(!locationDistances.containsKey(location.getKey())) {
+
+					locationDistances.put(location.getKey(), GeoUtils.distance(location, latitude, longitude));
+					locations.add(location);
+				}
+			}
+
+			if(!locations.isEmpty()) {
+
+				GeoUtils.sortByDistance(locations, latitude, longitude);
+
+				// The artifacts at a location are equally near, only the first k in the order of the locations can be nearest
+				for(Artifact artifact : artifactService.getAtLocations(locations, null, candidates.getK()).getResults()) {
+
+					candidates.offer(artifact, distance(artifact, locationDistances));
+				}
+			}
+
+			List<String> finerCells = new ArrayList<String>();
+
+			for(Map.Entry<String, List<Location>> entry : cellLocations.entrySet()) {
+
+				if(entry.getValue().size() >= MAX_LOCATIONS_PER_CELL && entry.getKey().length() < GeoHash.MAX_PRECISION) {
+
+					for(String child : GeoHash.children(entry.getKey())) {
+
+						if(GeoHash.distance(latitude, longitude, child) < candidates.getKthDistance()) {
+
+							finerCells.add(child);
+						}
+					}
+				}
+			}
+
+			Collections.sort(finerCells, new Comparator<String>() {
+
+				public int compare(String cell1, String cell2) {
+
+					return Double.compare(GeoHash.distance(latitude, longitude, cell1), GeoHash.distance(latitude, longitude, cell2));
+				}
+			});
+
+			cells = new LinkedHashSet<String>(finerCells.subList(0, Math.max(0, Math.min(finerCells.size(), budget - finerCellCount))));
+			finerCellCount += cells.size();
+		}
+
+		return finerCellCount;
+	}
+
+	/*
+	 * Returns the distance of the artifact's nearest location that was found
+	 */
+	private double distance(Artifact artifact, Map<Key, Double> locationDistances) {
+
+		double distance = Double.POSITIVE_INFINITY;
+
+		for(Key locationKey : artifact.getLocations()) {
+
+			Double locationDistance = locationDistances.get(locationKey);
+
+			if(null != locationDistance && locationDistance < distance) {
+
+				distance = locationDistance;
+			}
+		}
+
+		return distance;
+	}
+
+	/*
+	 * Returns a lower bound of the distance from the coordinate to any point outside the
+	 * cells of the rings up to ring. Leaving them crosses a parallel, at least the
+	 * difference in latitude away, or a meridian, at least its cross-track distance away.
+	 * The bound is infinite once the rings cover the globe.
+	 */
+	private double distanceOutside(double latitude, double longitude, int precision, int ring) {
+
+		double cellHeight = GeoHash.cellHeight(precision);
+		double cellWidth = GeoHash.cellWidth(precision);
+		int row = GeoHash.row(latitude, precision);
+		int column = GeoHash.column(longitude, precision);
+
+		double distance = Double.POSITIVE_INFINITY;
+
+		if(row - ring > 0) {
+
+			distance = Math.min(distance, (latitude - (-90.0 + (row - ring) * cellHeight)) * GeoUtils.METERS_PER_DEGREE);
+		}
+
+		if(row + ring + 1 < GeoHash.rows(precision)) {
+
+			distance = Math.min(distance, (-90.0 + (row + ring + 1) * cellHeight - latitude) * GeoUtils.METERS_PER_DEGREE);
+		}
+
+		if(2 * ring + 1 < GeoHash.columns(precision)) {
+
+			double normalizedLongitude = GeoUtils.normalizeLongitude(longitude);
+			double west = normalizedLongitude - (-180.0 + (column - ring) * cellWidth);
+			double east = -180.0 + (column + ring + 1) * cellWidth - normalizedLongitude;
+
+			distance = Math.min(distance, GeoUtils.crossTrackDistance(latitude, Math.min(west, east)));
+		}
+
+		return distance;
+	}
+
+	/*
+	 * The nearest artifacts found so far, in a max-heap of at most k artifacts whose
+	 * head is the k-th nearest
+	 */
+	private static class Candidates {
+
+		private int k = 0;
+		private Map<Key, Double> distances = new HashMap<Key, Double>();
+		private Map<Key, Artifact> artifacts = new HashMap<Key, Artifact>();
+		private PriorityQueue<Key> heap = null;
+
+		public Candidates(int k) {
+
+			this.k = k;
+
+			heap = new PriorityQueue<Key>(k, new Comparator<Key>() {
+
+				public int compare(Key key1, Key key2) {
+
+					return Double.compare(distances.get(key2), distances.get(key1));
+				}
+			});
+		}
+
+		/*
+		 * Adds the artifact at the distance, an artifact found before keeps its nearer distance
+		 */
+		public void offer(Artifact artifact, double distance) {
+
+			Double previous = distances.get(artifact.getKey());
+
+			if(null != previous && previous <= distance) {
+
+				return;
+			}
+
+			if(heap.size() == k && distance >= getKthDistance()) {
+
+				return;
+			}
+
+			// The key leaves the heap before its distance changes, so the heap stays ordered
+			heap.remove(artifact.getKey());
+			distances.put(artifact.getKey(), distance);
+			artifacts.put(artifact.getKey(), artifact);
+			heap.add(artifact.getKey());
+
+			if(heap.size() > k) {
+
+				Key farthest = heap.poll();
+				artifacts.remove(farthest);
+			}
+		}
+
+		public int getK() {
+
+			return k;
+		}
+
+		public double getKthDistance() {
+
+			return heap.size() < k ? Double.POSITIVE_INFINITY : distances.get(heap.peek());
+		}
+
+		public List<Artifact> getNearest() {
+
+			List<Artifact> nearest = new ArrayList<Artifact>(heap.size());
+
+			while(!heap.isEmpty()) {
+
+				nearest.add(artifacts.get(heap.poll()));
+			}
+
+			Collections.reverse(nearest);
+			return nearest;
+		}
+	}
+}
@@ -1,8 +1,11 @@
 package org.artifactly.service.dao;
 
+import java.io.Serializable;
 import java.util.List;
 
-public class PageableResults<T> {
+public class PageableResults<T> implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
 	
 	private List<T> results;
 	private String offset;
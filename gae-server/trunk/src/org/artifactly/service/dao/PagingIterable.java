@@ -0,0 +1,62 @@
+package org.artifactly.service.dao;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+ * Iterates over all results of a query one page at a time. A page is only
+ * fetched once the previous one has been consumed, and the query is resumed
+ * from the cursor of the previous page, so at most one page is held in memory.
+ */
+public abstract class PagingIterable<T> implements Iterable<T> {
+
+	private static final String ZERO_OFFSET = "0";
+
+	private long batchSize = 0;
+
+	public PagingIterable(long batchSize) {
+
+		this.batchSize = batchSize;
+	}
+
+	protected abstract PageableResults<T> fetch(String offset, long limit);
+
+	public Iterator<T> iterator() {
+
+		return new Iterator<T>() {
+
+			private Iterator<T> page = Collections.<T>emptyList().iterator();
+			private String offset = ZERO_OFFSET;
+			private boolean isLastPage = false;
+
+			public boolean hasNext() {
+
+				while(!page.hasNext() && !isLastPage) {
+
+					PageableResults<T> pageableResults = fetch(offset, batchSize);
+					page = pageableResults.getResults().iterator();
+					offset = pageableResults.getOffset();
+					isLastPage = pageableResults.getResults().size() < batchSize || null == offset;
+				}
+
+				return page.hasNext();
+			}
+
+			public T next() {
+
+				if(!hasNext()) {
+
+					throw new NoSuchElementException();
+				}
+
+				return page.next();
+			}
+
+			public void remove() {
+
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
@@ -0,0 +1,226 @@
+package org.artifactly.service.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.artifactly.service.geo.GeoHash;
+import org.artifactly.service.geo.GeoUtils;
+import org.artifactly.service.pojo.Artifact;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.inject.Inject;
+
+/*
+ * Looks up the public artifacts near a coordinate, nearest first. The memberships
+ * of public artifacts are queried by the geocells covering the circle, on the index
+ * over (isPublic, geocells, expiresAt). The queries of all cells run concurrently and
+ * read at most MAX_MEMBERSHIPS_PER_CELL memberships each, which carry the coordinates
+ * of their location, so the distances are known without reading the locations.
+ * A full cell may hold nearer memberships than those read, so its finer cells are
+ * read next, and a full cell at the finest precision is continued at its cursor,
+ * unless they are farther than the radius or than the limit-th nearest artifact
+ * found. The nearest artifacts are then loaded through the entity cache.
+ */
+public class PublicFeedQuery {
+
+	private static final int MAX_MEMBERSHIPS_PER_CELL = 100;
+
+	private AsyncDatastoreService asyncDatastoreService = null;
+	private EntityCache entityCache = null;
+
+	@Inject
+	public PublicFeedQuery(Manager manager, EntityCache entityCache) {
+
+		asyncDatastoreService = manager.getAsyncReadDatastoreService();
+		this.entityCache = entityCache;
+	}
+
+	public List<Artifact> get(double latitude, double longitude, double radius, int limit) {
+
+		Date asOf = new Date();
+
+		// An artifact at several locations, or a location in several cells, counts at its nearest distance
+		Map<Key, Double> distances = new HashMap<Key, Double>();
+
+		// The cells to read next, with the cursor to continue a full cell at
+		Map<String, Cursor> cells = new LinkedHashMap<String, Cursor>();
+
+		for(String cell : GeoHash.cover(latitude, longitude, radius)) {
+
+			cells.put(cell, null);
+		}
+
+		while(!cells.isEmpty()) {
+
+			Map<String, QueryResultIterator<Entity>> pending = new LinkedHashMap<String, QueryResultIterator<Entity>>();
+
+			// Preparing the iterator sends the query without waiting for it
+			for(Map.Entry<String, Cursor> entry : cells.entrySet()) {
+
+				FetchOptions fetchOptions = FetchOptions.Builder.withLimit(MAX_MEMBERSHIPS_PER_CELL).chunkSize(MAX_MEMBERSHIPS_PER_CELL);
+
+				if(null != entry.getValue()) {
+
+					fetchOptions.startCursor(entry.getValue());
+				}
+
+				pending.put(entry.getKey(), asyncDatastoreService.prepare(query(entry.getKey(), asOf)).asQueryResultIterator(fetchOptions));
+			}
+
+			Map<String, Cursor> fullCells = new LinkedHashMap<String, Cursor>();
+
+			for(Map.Entry<String, QueryResultIterator<Entity>> entry : pending.entrySet()) {
+
+				QueryResultIterator<Entity> memberships = entry.getValue();
+				int count = 0;
+
+				while(memberships.hasNext()) {
+
+					offer(distances, memberships.next(), latitude, longitude, radius);
+					count++;
+				}
+
+				if(MAX_MEMBERSHIPS_PER_CELL == count) {
+
+					fullCells.put(entry.getKey(), memberships.getCursor());
+				}
+			}
+
+			cells = next(fullCells, latitude, longitude, bound(distances, radius, limit));
+		}
+
+		List<Key> artifactKeys = nearest(distances, limit);
+		Map<Key, Entity> entities = entityCache.get(artifactKeys);
+		List<Artifact> artifacts = new ArrayList<Artifact>(artifactKeys.size());
+
+		for(Entity entity : EntityMapper.inOrder(artifactKeys, entities)) {
+
+			artifacts.add(EntityMapper.toArtifact(entity));
+		}
+
+		return artifacts;
+	}
+
+	private static Query query(String cell, Date asOf) {
+
+		Query query = new Query(LocationMembership.KIND);
+		query.addFilter(LocationMembership.IS_PUBLIC, FilterOperator.EQUAL, true);
+		query.addFilter(LocationMembership.GEOCELLS, FilterOperator.EQUAL, cell);
+		query.addFilter(Expiry.PROPERTY, FilterOperator.GREATER_THAN, asOf);
+
+		return query;
+	}
+
+	private static void offer(Map<Key, Double> distances, Entity membership, double latitude, double longitude, double radius) {
+
+		double distance = GeoUtils.distance((Double) membership.getProperty(LocationMembership.LATITUDE),
+											(Double) membership.getProperty(LocationMembership.LONGITUDE),
+											latitude,
+											longitude);
+
+		Key artifactKey = membership.getKey().getParent();
+		Double nearest = distances.get(artifactKey);
+
+		if(distance <= radius && (null == nearest || distance < nearest)) {
+
+			distances.put(artifactKey, distance);
+		}
+	}
+
+	/*
+	 * Returns the distance beyond which no membership can be in the feed: the radius,
+	 * or the distance of the limit-th nearest artifact once that many are found
+	 */
+	private double bound(Map<Key, Double> distances, double radius, int limit) {
+
+		if(distances.size() < limit) {
+
+			return radius;
+		}
+
+		List<Key> nearest = nearest(distances, limit);
+
+		return distances.get(nearest.get(nearest.size() - 1));
+	}
+
+	/*
+	 * Returns the cells to read after the full cells: their finer cells, or the full
+	 * cells themselves at their cursor at the finest precision, within the bound
+	 */
+	private static Map<String, Cursor> next(Map<String, Cursor> fullCells, double latitude, double longitude, double bound) {
+
+		Map<String, Cursor> cells = new LinkedHashMap<String, Cursor>();
+
+		for(Map.Entry<String, Cursor> entry : fullCells.entrySet()) {
+
+			String cell = entry.getKey();
+
+			if(cell.length() < GeoHash.MAX_PRECISION) {
+
+				for(String child : GeoHash.children(cell)) {
+
+					if(GeoHash.distance(latitude, longitude, child) <= bound) {
+
+						cells.put(child, null);
+					}
+				}
+			}
+			else if(GeoHash.distance(latitude, longitude, cell) <= bound) {
+
+				cells.put(cell, entry.getValue());
+			}
+		}
+
+		return cells;
+	}
+
+	/*
+	 * Returns the keys with the smallest distances, nearest first
+	 */
+	private List<Key> nearest(final Map<Key, Double> distances, int limit) {
+
+		Comparator<Key> farthestFirst = new Comparator<Key>() {
+
+			public int compare(Key key1, Key key2) {
+
+				return Double.compare(distances.get(key2), distances.get(key1));
+			}
+		};
+
+		PriorityQueue<Key> heap = new PriorityQueue<Key>(Math.max(1, limit), farthestFirst);
+
+		for(Key key : distances.keySet()) {
+
+			heap.add(key);
+
+			if(heap.size() > limit) {
+
+				heap.poll();
+			}
+		}
+
+		List<Key> keys = new ArrayList<Key>(heap.size());
+
+		while(!heap.isEmpty()) {
+
+			keys.add(heap.poll());
+		}
+
+		Collections.reverse(keys);
+		return keys;
+	}
+}
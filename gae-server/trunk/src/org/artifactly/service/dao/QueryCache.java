@@ -0,0 +1,397 @@
+package org.artifactly.service.dao;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+
+/*
+ * Memcache backed query result cache. Every entry is stored under the sum of the
+ * version stamps of the scopes it depends on, such as the geocells or the location
+ * it was read from, and of the stamp of the whole namespace. Incrementing the stamp
+ * of a scope invalidates the cached results that depend on it, on every instance,
+ * and leaves the others cached. The stamps only grow, so the sum of a fixed set of
+ * scopes changes with each of them. The time of the last invalidation of each scope
+ * is kept next to its stamp, and both make the version of a response depending on
+ * the scopes, for its ETag and Last-Modified.
+ *
+ * The last value put under a key is also kept apart from the stamps, for a longer
+ * time, and served stale when the datastore misses its read deadline.
+ *
+ * Identical misses of queries run through the cache at the same time on this
+ * instance share one query.
+ */
+public class QueryCache {
+
+	private static final String LAST_PREFIX = "last:";
+	private static final String SCOPE_PREFIX = "scope:";
+	private static final String MODIFIED_PREFIX = "modified:";
+
+	// The scope every entry depends on
+	private static final String NAMESPACE_SCOPE = "";
+
+	private MemcacheService memcacheService = null;
+	private int ttl = 0;
+	private Expiration expiration = null;
+	private Expiration staleExpiration = null;
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+	private AtomicLong staleHits = new AtomicLong();
+	private SingleFlight singleFlight = new SingleFlight();
+
+	public QueryCache(String namespace, int ttl, int staleTtl) {
+
+		memcacheService = MemcacheServiceFactory.getMemcacheService(namespace);
+		this.ttl = ttl;
+		expiration = Expiration.byDeltaSeconds(ttl);
+		staleExpiration = Expiration.byDeltaSeconds(staleTtl);
+	}
+
+	/*
+	 * Returns the seconds a result is cached for
+	 */
+	public int getTtl() {
+
+		return ttl;
+	}
+
+	/*
+	 * Returns the stamp of each scope including the stamp of the namespace, read with
+	 * one memcache call while all of them exist
+	 */
+	public Map<String, Long> getStamps(Collection<String> scopes) {
+
+		Map<String, Object> values = getAll(keys(SCOPE_PREFIX, scopes));
+		long namespaceStamp = toStamp(values.get(SCOPE_PREFIX + NAMESPACE_SCOPE));
+		Map<String, Long> stamps = new HashMap<String, Long>();
+
+		for(String scope : scopes) {
+
+			stamps.put(scope, namespaceStamp + toStamp(values.get(SCOPE_PREFIX + scope)));
+		}
+
+		return stamps;
+	}
+
+	/*
+	 * Returns the version of the results depending on the scopes, read with one
+	 * memcache call while all of them exist
+	 */
+	public Version getVersion(Collection<String> scopes) {
+
+		Set<String> keys = keys(SCOPE_PREFIX, scopes);
+		keys.addAll(keys(MODIFIED_PREFIX, scopes));
+
+		long stamp = 0;
+		long modified = 0;
+
+		for(Map.Entry<String, Object> entry : getAll(keys).entrySet()) {
+
+			if(entry.getKey().startsWith(SCOPE_PREFIX)) {
+
+				stamp += toStamp(entry.getValue());
+			}
+			else {
+
+				modified = Math.max(modified, toStamp(entry.getValue()));
+			}
+		}
+
+		return new Version(stamp, new Date(modified));
+	}
+
+	/*
+	 * Returns the stamp of an entry depending on all the scopes
+	 */
+	public long getStamp(Collection<String> scopes) {
+
+		long stamp = 0;
+
+		for(long scopeStamp : getStamps(scopes).values()) {
+
+			stamp += scopeStamp;
+		}
+
+		return stamp;
+	}
+
+	/*
+	 * Invalidates all cached results of the namespace
+	 */
+	public void invalidate() {
+
+		invalidate(Collections.singleton(NAMESPACE_SCOPE));
+	}
+
+	/*
+	 * Invalidates the cached results depending on any of the scopes
+	 */
+	public void invalidate(Collection<String> scopes) {
+
+		Long modified = System.currentTimeMillis();
+		Map<String, Object> times = new HashMap<String, Object>();
+		Set<String> keys = new HashSet<String>();
+
+		for(String scope : scopes) {
+
+			times.put(MODIFIED_PREFIX + scope, modified);
+			keys.add(SCOPE_PREFIX + scope);
+		}
+
+		// The times are set before the stamps, so a new stamp is never seen with an older time
+		memcacheService.putAll(times);
+		memcacheService.incrementAll(keys, 1, restartStamp());
+	}
+
+	public Object get(long stamp, String key) {
+
+		Object value = memcacheService.get(stampedKey(stamp, key));
+		count(null != value);
+		return value;
+	}
+
+	/*
+	 * Returns the cached result of the query under the key, and runs the query on a
+	 * miss. The result depends on the scopes and is cached under their stamp read
+	 * before the query, so a change made while it runs is never hidden. When the query
+	 * misses its read deadline the last result put under the key is served stale.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(final String key, Collection<String> scopes, final Callable<T> query) {
+
+		final long stamp = getStamp(scopes);
+		T value = (T) get(stamp, key);
+
+		if(null != value) {
+
+			return value;
+		}
+
+		try {
+
+			return singleFlight.execute(stamp + ":" + key, new Callable<T>() {
+
+				public T call() throws Exception {
+
+					T value = query.call();
+					put(stamp, key, value);
+					return value;
+				}
+			});
+
+		} catch (RuntimeException e) {
+
+			return (T) getStale(key, e);
+		}
+	}
+
+	/*
+	 * Returns the cached values found for the keys, each under its own stamp, fetched
+	 * with one memcache call
+	 */
+	public Map<String, Object> getAll(Map<String, Long> stamps) {
+
+		Map<String, String> stampedKeys = new HashMap<String, String>();
+
+		for(Map.Entry<String, Long> entry : stamps.entrySet()) {
+
+			stampedKeys.put(stampedKey(entry.getValue(), entry.getKey()), entry.getKey());
+		}
+
+		Map<String, Object> values = new HashMap<String, Object>();
+
+		for(Map.Entry<String, Object> entry : memcacheService.getAll(stampedKeys.keySet()).entrySet()) {
+
+			values.put(stampedKeys.get(entry.getKey()), entry.getValue());
+		}
+
+		hits.addAndGet(values.size());
+		misses.addAndGet(stamps.size() - values.size());
+		return values;
+	}
+
+	public void put(long stamp, String key, Object value) {
+
+		memcacheService.put(stampedKey(stamp, key), value, expiration);
+		memcacheService.put(LAST_PREFIX + key, value, staleExpiration);
+	}
+
+	/*
+	 * Returns the last value put under the key when the failure is a missed read
+	 * deadline, and marks the request as served stale. Otherwise, or without a last
+	 * value, the failure is rethrown.
+	 */
+	public Object getStale(String key, RuntimeException failure) {
+
+		if(!StaleResults.isTimeout(failure)) {
+
+			throw failure;
+		}
+
+		Object value = memcacheService.get(LAST_PREFIX + key);
+
+		if(null == value) {
+
+			throw failure;
+		}
+
+		staleHits.incrementAndGet();
+		StaleResults.markServed();
+		return value;
+	}
+
+	/*
+	 * Puts the values under the stamps of their keys
+	 */
+	public void putAll(Map<String, Long> stamps, Map<String, ?> values) {
+
+		Map<String, Object> stampedValues = new HashMap<String, Object>();
+
+		for(Map.Entry<String, ?> entry : values.entrySet()) {
+
+			stampedValues.put(stampedKey(stamps.get(entry.getKey()), entry.getKey()), entry.getValue());
+		}
+
+		memcacheService.putAll(stampedValues, expiration);
+	}
+
+	public long getHits() {
+
+		return hits.get();
+	}
+
+	public long getMisses() {
+
+		return misses.get();
+	}
+
+	public long getStaleHits() {
+
+		return staleHits.get();
+	}
+
+	/*
+	 * Returns the number of queries saved by sharing a query already running
+	 */
+	public long getCoalesced() {
+
+		return singleFlight.getCoalesced();
+	}
+
+	private void count(boolean hit) {
+
+		if(hit) {
+
+			hits.incrementAndGet();
+		}
+		else {
+
+			misses.incrementAndGet();
+		}
+	}
+
+	/*
+	 * A stamp or time put by getAll is read as a Long, a stamp created by an increment
+	 * as the String of its value
+	 */
+	private static Long toStamp(Object value) {
+
+		return null == value ? null : Long.valueOf(value.toString());
+	}
+
+	/*
+	 * Returns the keys of the scopes and of the namespace under the prefix
+	 */
+	private static Set<String> keys(String prefix, Collection<String> scopes) {
+
+		Set<String> keys = new HashSet<String>();
+		keys.add(prefix + NAMESPACE_SCOPE);
+
+		for(String scope : scopes) {
+
+			keys.add(prefix + scope);
+		}
+
+		return keys;
+	}
+
+	/*
+	 * Returns the stamps and times under the keys. Lost stamps restart at the current
+	 * time in microseconds, which is ahead of any stamp handed out before, as a scope
+	 * is invalidated far less than once per microsecond. Lost times restart at the
+	 * current time, so they are never earlier than a change.
+	 */
+	private Map<String, Object> getAll(Set<String> keys) {
+
+		Map<String, Object> values = new HashMap<String, Object>(memcacheService.getAll(keys));
+
+		if(values.size() == keys.size()) {
+
+			return values;
+		}
+
+		long now = System.currentTimeMillis();
+		Map<String, Object> lostValues = new HashMap<String, Object>();
+
+		for(String key : keys) {
+
+			if(!values.containsKey(key)) {
+
+				lostValues.put(key, key.startsWith(MODIFIED_PREFIX) ? now : now * 1000);
+			}
+		}
+
+		// A value added by another request at the same time is read back instead
+		memcacheService.putAll(lostValues, null, SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+		values.putAll(lostValues);
+		values.putAll(memcacheService.getAll(lostValues.keySet()));
+
+		return values;
+	}
+
+	private static Long restartStamp() {
+
+		return System.currentTimeMillis() * 1000;
+	}
+
+	private String stampedKey(long stamp, String key) {
+
+		return stamp + ":" + key;
+	}
+
+	/*
+	 * Version of the results depending on a set of scopes: the sum of the stamps of the
+	 * scopes and the latest time one of them was invalidated
+	 */
+	public static class Version {
+
+		private long stamp = 0;
+		private Date modified = null;
+
+		public Version(long stamp, Date modified) {
+
+			this.stamp = stamp;
+			this.modified = modified;
+		}
+
+		public long getStamp() {
+
+			return stamp;
+		}
+
+		public Date getModified() {
+
+			return modified;
+		}
+	}
+}
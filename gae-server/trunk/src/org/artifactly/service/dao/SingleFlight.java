@@ -0,0 +1,60 @@
+package org.artifactly.service.dao;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Coalesces identical queries running at the same time on this instance. The first
+ * caller of a key runs the query on its own thread, callers arriving while it runs
+ * wait for it and share its result or failure. A key is only shared while its query
+ * is in flight, callers arriving afterwards run the query again.
+ */
+public class SingleFlight {
+
+	private ConcurrentMap<String, FutureTask<?>> inFlight = new ConcurrentHashMap<String, FutureTask<?>>();
+	private AtomicLong executions = new AtomicLong();
+	private AtomicLong coalesced = new AtomicLong();
+
+	@SuppressWarnings("unchecked")
+	public <T> T execute(String key, Callable<T> query) {
+
+		FutureTask<T> task = new FutureTask<T>(query);
+		FutureTask<T> running = (FutureTask<T>) inFlight.putIfAbsent(key, task);
+
+		if(null != running) {
+
+			coalesced.incrementAndGet();
+			return Futures.get(running);
+		}
+
+		try {
+
+			executions.incrementAndGet();
+			task.run();
+			return Futures.get(task);
+
+		} finally {
+
+			inFlight.remove(key, task);
+		}
+	}
+
+	/*
+	 * Returns the number of queries run
+	 */
+	public long getExecutions() {
+
+		return executions.get();
+	}
+
+	/*
+	 * Returns the number of queries saved by sharing a running query
+	 */
+	public long getCoalesced() {
+
+		return coalesced.get();
+	}
+}
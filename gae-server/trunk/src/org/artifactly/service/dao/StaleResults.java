@@ -0,0 +1,51 @@
+package org.artifactly.service.dao;
+
+import org.datanucleus.store.query.QueryTimeoutException;
+
+import com.google.appengine.api.datastore.DatastoreTimeoutException;
+
+/*
+ * Marks the requests answered with stale cached results, because the datastore did
+ * not answer a read within its deadline. The mark is kept for the current request
+ * thread, and reset with the RPC counts when a request starts.
+ */
+public final class StaleResults {
+
+	private static final ThreadLocal<Boolean> served = new ThreadLocal<Boolean>();
+
+	private StaleResults() {
+
+	}
+
+	public static void reset() {
+
+		served.remove();
+	}
+
+	public static void markServed() {
+
+		served.set(Boolean.TRUE);
+	}
+
+	public static boolean isServed() {
+
+		return Boolean.TRUE.equals(served.get());
+	}
+
+	/*
+	 * Returns whether the failure is a missed read deadline, thrown by the low-level
+	 * API or wrapped by JDO
+	 */
+	public static boolean isTimeout(Throwable throwable) {
+
+		for(Throwable cause = throwable; null != cause; cause = cause.getCause()) {
+
+			if(cause instanceof DatastoreTimeoutException || cause instanceof QueryTimeoutException) {
+
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
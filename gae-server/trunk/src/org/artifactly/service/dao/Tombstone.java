@@ -0,0 +1,42 @@
+package org.artifactly.service.dao;
+
+import java.io.Serializable;
+
+import com.google.appengine.api.datastore.Key;
+
+/*
+ * Marks a deleted entity for the synchronization of the clients
+ */
+public class Tombstone implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private Key key;
+	private Long version;
+
+	public Tombstone() {
+
+	}
+
+	public Tombstone(Key key, Long version) {
+
+		this.key = key;
+		this.version = version;
+	}
+
+	public Key getKey() {
+		return key;
+	}
+
+	public void setKey(Key key) {
+		this.key = key;
+	}
+
+	public Long getVersion() {
+		return version;
+	}
+
+	public void setVersion(Long version) {
+		this.version = version;
+	}
+}
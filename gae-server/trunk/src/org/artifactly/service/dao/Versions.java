@@ -0,0 +1,54 @@
+package org.artifactly.service.dao;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Modification versions of the synchronized entities. A version is the write time in
+ * microseconds, made strictly increasing on each instance, so versions increase
+ * without a counter shared by all writes. As an entity is written after its version
+ * is taken, changes are only read once their versions have settled, which allows
+ * for the duration of the write and the clock difference of the instances.
+ *
+ * Versions of different instances are only ordered as far as their clocks agree, so
+ * the settle window is best-effort: a write taking longer than the window, or taken
+ * on an instance whose clock lags by more than it, gets a version below a token
+ * already returned and is missed by the clients holding that token.
+ */
+public final class Versions {
+
+	public static final String PROPERTY = "version";
+
+	// Milliseconds allowed for a write to complete and for the clocks of the instances to differ
+	private static final long SETTLE_MILLIS = Long.getLong("artifactly.sync.settle", 10000);
+	private static final long MICROS_PER_MILLI = 1000;
+
+	private static final AtomicLong last = new AtomicLong();
+
+	private Versions() {
+
+	}
+
+	public static long next() {
+
+		long now = System.currentTimeMillis() * MICROS_PER_MILLI;
+
+		while(true) {
+
+			long previous = last.get();
+			long version = Math.max(previous + 1, now);
+
+			if(last.compareAndSet(previous, version)) {
+
+				return version;
+			}
+		}
+	}
+
+	/*
+	 * Returns the highest version whose writes have completed
+	 */
+	public static long settled() {
+
+		return (System.currentTimeMillis() - SETTLE_MILLIS) * MICROS_PER_MILLI;
+	}
+}
@@ -0,0 +1,39 @@
+package org.artifactly.service.dao;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.artifactly.service.pojo.Artifact;
+
+/*
+ * Contents of a map viewport, either the artifacts themselves or the clusters
+ * of their locations
+ */
+public class Viewport implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private List<Artifact> artifacts = new ArrayList<Artifact>();
+	private List<Cluster> clusters = new ArrayList<Cluster>();
+
+	public Viewport() {
+
+	}
+
+	public List<Artifact> getArtifacts() {
+		return artifacts;
+	}
+
+	public void setArtifacts(List<Artifact> artifacts) {
+		this.artifacts = artifacts;
+	}
+
+	public List<Cluster> getClusters() {
+		return clusters;
+	}
+
+	public void setClusters(List<Cluster> clusters) {
+		this.clusters = clusters;
+	}
+}
@@ -0,0 +1,140 @@
+package org.artifactly.service.dao;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.artifactly.service.geo.GeoHash;
+import org.artifactly.service.geo.GeoUtils;
+import org.artifactly.service.pojo.Artifact;
+import org.artifactly.service.pojo.Location;
+
+import com.google.appengine.api.datastore.Key;
+import com.google.inject.Inject;
+
+/*
+ * Looks up the contents of a map viewport. The viewport is covered with a grid of
+ * geocells sized for the zoom level and at most MAX_LOCATIONS_PER_CELL locations
+ * are read per cell, so the reads are bounded by the viewport and not by the number
+ * of locations in it. A viewport with few locations returns their artifacts, if
+ * they fit on one page of MAX_ARTIFACTS, any other returns one cluster per cell with
+ * the centroid and number of its locations, which are counted up to
+ * MAX_LOCATIONS_PER_CELL.
+ */
+public class ViewportQuery {
+
+	// Clusters are about a quarter of a 256 pixel map tile wide
+	private static final int CLUSTERS_PER_TILE = 4;
+	public static final int MAX_ZOOM = 21;
+	private static final int MAX_CELLS = 64;
+	private static final int MAX_LOCATIONS_PER_CELL = 100;
+	private static final int MAX_ARTIFACT_LOCATIONS = 50;
+	private static final int MAX_ARTIFACTS = 500;
+
+	private LocationService locationService = null;
+	private ArtifactService artifactService = null;
+
+	@Inject
+	public ViewportQuery(LocationService locationService, ArtifactService artifactService) {
+
+		this.locationService = locationService;
+		this.artifactService = artifactService;
+	}
+
+	public Viewport get(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude, int zoom) {
+
+		Set<String> cells = cells(minLatitude, minLongitude, maxLatitude, maxLongitude, zoom);
+		Map<String, List<Location>> locations = locationService.get(cells, MAX_LOCATIONS_PER_CELL);
+
+		// A location is in exactly one cell of the grid, only the part of a cell inside the viewport counts
+		Map<String, List<Location>> grid = new LinkedHashMap<String, List<Location>>();
+		Map<Key, Location> viewportLocations = new LinkedHashMap<Key, Location>();
+		boolean isTruncated = false;
+
+		for(String cell : cells) {
+
+			List<Location> cellLocations = locations.get(cell);
+
+			if(null == cellLocations || cellLocations.isEmpty()) {
+
+				continue;
+			}
+
+			isTruncated |= cellLocations.size() >= MAX_LOCATIONS_PER_CELL;
+			List<Location> inside = new ArrayList<Location>();
+
+			for(Location location : cellLocations) {
+
+				if(GeoUtils.contains(minLatitude, minLongitude, maxLatitude, maxLongitude, location)) {
+
+					inside.add(location);
+					viewportLocations.put(location.getKey(), location);
+				}
+			}
+
+			if(!inside.isEmpty()) {
+
+				grid.put(cell, inside);
+			}
+		}
+
+		Viewport viewport = new Viewport();
+
+		if(!isTruncated && viewportLocations.size() <= MAX_ARTIFACT_LOCATIONS) {
+
+			PageableResults<Artifact> artifacts = artifactService.getAtLocations(new ArrayList<Location>(viewportLocations.values()), null, MAX_ARTIFACTS);
+
+			if(null == artifacts.getOffset()) {
+
+				viewport.setArtifacts(artifacts.getResults());
+				return viewport;
+			}
+		}
+
+		for(Map.Entry<String, List<Location>> entry : grid.entrySet()) {
+
+			double latitude = 0;
+			double longitude = 0;
+
+			for(Location location : entry.getValue()) {
+
+				latitude += location.getLatitude();
+				longitude += location.getLongitude();
+			}
+
+			int count = entry.getValue().size();
+			viewport.getClusters().add(new Cluster(entry.getKey(), latitude / count, longitude / count, count));
+		}
+
+		return viewport;
+	}
+
+	/*
+	 * Returns the grid cells covering the viewport at the zoom level
+	 */
+	public static Set<String> cells(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude, int zoom) {
+
+		return GeoHash.cover(minLatitude, minLongitude, maxLatitude, maxLongitude, precision(minLatitude, minLongitude, maxLatitude, maxLongitude, zoom));
+	}
+
+	/*
+	 * Returns the precision of the grid cells, the finest one at least as wide as a
+	 * cluster at the zoom level which covers the viewport with at most MAX_CELLS cells
+	 */
+	private static int precision(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude, int zoom) {
+
+		double clusterWidth = 360.0 / (1L << Math.max(0, Math.min(MAX_ZOOM, zoom))) / CLUSTERS_PER_TILE;
+		int precision = GeoHash.MAX_PRECISION;
+
+		while(precision > GeoHash.MIN_PRECISION &&
+			  (GeoHash.cellWidth(precision) < clusterWidth ||
+			   GeoHash.count(minLatitude, minLongitude, maxLatitude, maxLongitude, precision) > MAX_CELLS)) {
+
+			precision--;
+		}
+
+		return precision;
+	}
+}
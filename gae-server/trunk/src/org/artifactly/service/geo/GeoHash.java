@@ -0,0 +1,388 @@
+package org.artifactly.service.geo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * Geohash encoding of coordinates into base32 cell keys. A location stores the
+ * cell it falls into at every precision between MIN_PRECISION and MAX_PRECISION,
+ * so a proximity lookup can pick the precision matching the search radius and
+ * query a small, fixed number of cells with plain equality filters.
+ */
+public final class GeoHash {
+
+	public static final int MIN_PRECISION = 1;
+	public static final int MAX_PRECISION = 8;
+
+	private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+	private static final int[] BITS = { 16, 8, 4, 2, 1 };
+
+	private GeoHash() {
+
+	}
+
+	public static String encode(double latitude, double longitude, int precision) {
+
+		double minLatitude = -90.0;
+		double maxLatitude = 90.0;
+		double minLongitude = -180.0;
+		double maxLongitude = 180.0;
+
+		StringBuilder geohash = new StringBuilder(precision);
+		boolean isLongitudeBit = true;
+		int bit = 0;
+		int character = 0;
+
+		while(geohash.length() < precision) {
+
+			if(isLongitudeBit) {
+
+				double middle = (minLongitude + maxLongitude) / 2;
+
+				if(longitude >= middle) {
+
+					character |= BITS[bit];
+					minLongitude = middle;
+				}
+				else {
+
+					maxLongitude = middle;
+				}
+			}
+			else {
+
+				double middle = (minLatitude + maxLatitude) / 2;
+
+				if(latitude >= middle) {
+
+					character |= BITS[bit];
+					minLatitude = middle;
+				}
+				else {
+
+					maxLatitude = middle;
+				}
+			}
+
+			isLongitudeBit = !isLongitudeBit;
+
+			if(bit < BITS.length - 1) {
+
+				bit++;
+			}
+			else {
+
+				geohash.append(BASE32[character]);
+				bit = 0;
+				character = 0;
+			}
+		}
+
+		return geohash.toString();
+	}
+
+	/*
+	 * Returns the bounds of the cell as { minLatitude, minLongitude, maxLatitude, maxLongitude }
+	 */
+	public static double[] bounds(String cell) {
+
+		double[] bounds = { -90.0, -180.0, 90.0, 180.0 };
+		boolean isLongitudeBit = true;
+
+		for(int index = 0; index < cell.length(); index++) {
+
+			int character = String.valueOf(BASE32).indexOf(cell.charAt(index));
+
+			for(int bit : BITS) {
+
+				// Longitude bits halve the longitude range, latitude bits the latitude range
+				int min = isLongitudeBit ? 1 : 0;
+				double middle = (bounds[min] + bounds[min + 2]) / 2;
+
+				if(0 != (character & bit)) {
+
+					bounds[min] = middle;
+				}
+				else {
+
+					bounds[min + 2] = middle;
+				}
+
+				isLongitudeBit = !isLongitudeBit;
+			}
+		}
+
+		return bounds;
+	}
+
+	/*
+	 * Returns the 32 cells of the next precision dividing the cell
+	 */
+	public static List<String> children(String cell) {
+
+		List<String> children = new ArrayList<String>(BASE32.length);
+
+		for(char character : BASE32) {
+
+			children.add(cell + character);
+		}
+
+		return children;
+	}
+
+	/*
+	 * Returns the cell keys of the coordinate for all precisions, from the
+	 * coarsest to the finest.
+	 */
+	public static List<String> cells(double latitude, double longitude) {
+
+		String geohash = encode(latitude, longitude, MAX_PRECISION);
+		List<String> cells = new ArrayList<String>(MAX_PRECISION - MIN_PRECISION + 1);
+
+		for(int precision = MIN_PRECISION; precision <= MAX_PRECISION; precision++) {
+
+			cells.add(geohash.substring(0, precision));
+		}
+
+		return cells;
+	}
+
+	/*
+	 * Returns the cells covering a circle around the coordinate: the cell
+	 * containing the center and its eight neighbors, at the finest precision
+	 * whose cells are at least as large as the radius. A circle larger than the
+	 * coarsest cells, or reaching close to a pole, is covered by the cells of its
+	 * bounding box instead.
+	 */
+	public static Set<String> cover(double latitude, double longitude, double radius) {
+
+		int precision = precision(latitude, radius);
+
+		if(!covers(latitude, radius, precision)) {
+
+			double radiusDegrees = radius / GeoUtils.METERS_PER_DEGREE;
+			double minLatitude = Math.max(-90.0, latitude - radiusDegrees);
+			double maxLatitude = Math.min(90.0, latitude + radiusDegrees);
+			double longitudeDegrees = radiusDegrees / Math.cos(Math.toRadians(Math.max(Math.abs(minLatitude), Math.abs(maxLatitude))));
+
+			if(longitudeDegrees >= 180.0) {
+
+				return cover(minLatitude, -180.0, maxLatitude, 180.0, precision);
+			}
+
+			return cover(minLatitude, GeoUtils.normalizeLongitude(longitude - longitudeDegrees), maxLatitude, GeoUtils.normalizeLongitude(longitude + longitudeDegrees), precision);
+		}
+
+		double cellHeight = cellHeight(precision);
+		double cellWidth = cellWidth(precision);
+
+		Set<String> cells = new LinkedHashSet<String>();
+
+		for(int row = -1; row <= 1; row++) {
+
+			double cellLatitude = Math.max(-90.0, Math.min(90.0, latitude + row * cellHeight));
+
+			for(int column = -1; column <= 1; column++) {
+
+				double cellLongitude = GeoUtils.normalizeLongitude(longitude + column * cellWidth);
+				cells.add(encode(cellLatitude, cellLongitude, precision));
+			}
+		}
+
+		return cells;
+	}
+
+	/*
+	 * Returns the cells at the precision covering a bounding box. A box with a minimum
+	 * longitude greater than its maximum crosses the antimeridian.
+	 */
+	public static Set<String> cover(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude, int precision) {
+
+		double cellHeight = cellHeight(precision);
+		double cellWidth = cellWidth(precision);
+		double east = maxLongitude < minLongitude ? maxLongitude + 360.0 : maxLongitude;
+
+		Set<String> cells = new LinkedHashSet<String>();
+
+		// Stepping by the cell size from the south west corner visits every cell, the last step is clamped to the edge
+		for(double latitude = minLatitude; ; latitude += cellHeight) {
+
+			double cellLatitude = Math.min(latitude, maxLatitude);
+
+			for(double longitude = minLongitude; ; longitude += cellWidth) {
+
+				cells.add(encode(cellLatitude, GeoUtils.normalizeLongitude(Math.min(longitude, east)), precision));
+
+				if(longitude >= east) {
+
+					break;
+				}
+			}
+
+			if(latitude >= maxLatitude) {
+
+				break;
+			}
+		}
+
+		return cells;
+	}
+
+	/*
+	 * Returns the cells at the precision that are ring cells away from the cell of the
+	 * coordinate, ring 0 being the cell itself. Rows beyond the poles are left out and
+	 * columns wrap around the antimeridian.
+	 */
+	public static Set<String> ring(double latitude, double longitude, int precision, int ring) {
+
+		int rows = rows(precision);
+		int columns = columns(precision);
+		int row = row(latitude, precision);
+		int column = column(longitude, precision);
+
+		Set<String> cells = new LinkedHashSet<String>();
+
+		for(int rowOffset = -ring; rowOffset <= ring; rowOffset++) {
+
+			int cellRow = row + rowOffset;
+
+			if(cellRow < 0 || cellRow >= rows) {
+
+				continue;
+			}
+
+			// Inner rows only have the two cells at the ends of the ring
+			int columnStep = Math.abs(rowOffset) == ring ? 1 : Math.max(1, 2 * ring);
+
+			for(int columnOffset = -ring; columnOffset <= ring; columnOffset += columnStep) {
+
+				int cellColumn = ((column + columnOffset) % columns + columns) % columns;
+
+				cells.add(encode(-90.0 + (cellRow + 0.5) * cellHeight(precision), -180.0 + (cellColumn + 0.5) * cellWidth(precision), precision));
+			}
+		}
+
+		return cells;
+	}
+
+	public static int rows(int precision) {
+
+		return 1 << ((precision * 5) / 2);
+	}
+
+	public static int columns(int precision) {
+
+		return 1 << ((precision * 5 + 1) / 2);
+	}
+
+	/*
+	 * Returns the row of the cell containing the latitude, counted from the south pole
+	 */
+	public static int row(double latitude, int precision) {
+
+		return Math.min(rows(precision) - 1, (int) Math.floor((latitude + 90.0) / cellHeight(precision)));
+	}
+
+	/*
+	 * Returns the column of the cell containing the longitude, counted from the antimeridian
+	 */
+	public static int column(double longitude, int precision) {
+
+		return Math.min(columns(precision) - 1, (int) Math.floor((GeoUtils.normalizeLongitude(longitude) + 180.0) / cellWidth(precision)));
+	}
+
+	/*
+	 * Returns the number of cells at the precision covering a bounding box, without
+	 * computing them
+	 */
+	public static long count(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude, int precision) {
+
+		double cellHeight = cellHeight(precision);
+		double cellWidth = cellWidth(precision);
+		double east = maxLongitude < minLongitude ? maxLongitude + 360.0 : maxLongitude;
+
+		long rows = (long) Math.floor((maxLatitude + 90.0) / cellHeight) - (long) Math.floor((minLatitude + 90.0) / cellHeight) + 1;
+		long columns = (long) Math.floor((east + 180.0) / cellWidth) - (long) Math.floor((minLongitude + 180.0) / cellWidth) + 1;
+
+		return rows * columns;
+	}
+
+	/*
+	 * Returns the finest precision whose cells, measured at the latitude of the
+	 * circle closest to a pole, are at least radius meters high and wide, or
+	 * MIN_PRECISION if there is none.
+	 */
+	public static int precision(double latitude, double radius) {
+
+		for(int precision = MAX_PRECISION; precision > MIN_PRECISION; precision--) {
+
+			if(covers(latitude, radius, precision)) {
+
+				return precision;
+			}
+		}
+
+		return MIN_PRECISION;
+	}
+
+	/*
+	 * Returns whether the cells at the precision, measured at the latitude of the
+	 * circle closest to a pole, are at least radius meters high and wide, so the
+	 * cell of the center and its eight neighbors cover the circle
+	 */
+	public static boolean covers(double latitude, double radius, int precision) {
+
+		double radiusDegrees = radius / GeoUtils.METERS_PER_DEGREE;
+		double extremeLatitude = Math.min(90.0, Math.abs(latitude) + radiusDegrees);
+
+		double heightMeters = cellHeight(precision) * GeoUtils.METERS_PER_DEGREE;
+		double widthMeters = cellWidth(precision) * GeoUtils.METERS_PER_DEGREE * Math.cos(Math.toRadians(extremeLatitude));
+
+		return heightMeters >= radius && widthMeters >= radius;
+	}
+
+	/*
+	 * Returns a lower bound of the distance in meters from the coordinate to any point
+	 * of the cell
+	 */
+	public static double distance(double latitude, double longitude, String cell) {
+
+		double[] bounds = bounds(cell);
+		double latitudeDistance = 0;
+		double longitudeDistance = 0;
+
+		if(latitude < bounds[0]) {
+
+			latitudeDistance = (bounds[0] - latitude) * GeoUtils.METERS_PER_DEGREE;
+		}
+		else if(latitude > bounds[2]) {
+
+			latitudeDistance = (latitude - bounds[2]) * GeoUtils.METERS_PER_DEGREE;
+		}
+
+		double normalizedLongitude = GeoUtils.normalizeLongitude(longitude);
+
+		if(normalizedLongitude < bounds[1] || normalizedLongitude > bounds[3]) {
+
+			double west = ((normalizedLongitude - bounds[3]) % 360.0 + 360.0) % 360.0;
+			double east = ((bounds[1] - normalizedLongitude) % 360.0 + 360.0) % 360.0;
+			longitudeDistance = GeoUtils.crossTrackDistance(latitude, Math.min(west, east));
+		}
+
+		return Math.max(latitudeDistance, longitudeDistance);
+	}
+
+	public static double cellHeight(int precision) {
+
+		int latitudeBits = (precision * 5) / 2;
+		return 180.0 / (1L << latitudeBits);
+	}
+
+	public static double cellWidth(int precision) {
+
+		int longitudeBits = (precision * 5 + 1) / 2;
+		return 360.0 / (1L << longitudeBits);
+	}
+}
@@ -0,0 +1,121 @@
+package org.artifactly.service.geo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.artifactly.service.pojo.Location;
+
+public final class GeoUtils {
+
+	public static final double EARTH_RADIUS = 6371009.0;
+	public static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS / 180.0;
+
+	// Largest radius in meters accepted by the proximity lookups
+	public static final double MAX_RADIUS = 100000.0;
+
+	private GeoUtils() {
+
+	}
+
+	/*
+	 * Great-circle distance in meters (haversine formula)
+	 */
+	public static double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+
+		double deltaLatitude = Math.toRadians(latitude2 - latitude1);
+		double deltaLongitude = Math.toRadians(longitude2 - longitude1);
+
+		double a = Math.sin(deltaLatitude / 2) * Math.sin(deltaLatitude / 2) +
+				   Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2)) *
+				   Math.sin(deltaLongitude / 2) * Math.sin(deltaLongitude / 2);
+
+		return 2 * EARTH_RADIUS * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+	}
+
+	public static double distance(Location location, double latitude, double longitude) {
+
+		return distance(location.getLatitude(), location.getLongitude(), latitude, longitude);
+	}
+
+	/*
+	 * Distance in meters from the coordinate to the meridian the given degrees of
+	 * longitude away
+	 */
+	public static double crossTrackDistance(double latitude, double longitudeDelta) {
+
+		double sine = Math.cos(Math.toRadians(latitude)) * Math.sin(Math.toRadians(Math.min(90.0, longitudeDelta)));
+		return EARTH_RADIUS * Math.asin(Math.min(1.0, sine));
+	}
+
+	/*
+	 * Returns whether the coordinate and radius are valid for a proximity lookup
+	 */
+	public static boolean isValid(double latitude, double longitude, double radius) {
+
+		return Math.abs(latitude) <= 90.0 && Math.abs(longitude) <= 180.0 && radius > 0 && radius <= MAX_RADIUS;
+	}
+
+	public static double normalizeLongitude(double longitude) {
+
+		double normalized = (longitude + 180.0) % 360.0;
+
+		if(normalized < 0) {
+
+			normalized += 360.0;
+		}
+
+		return normalized - 180.0;
+	}
+
+	/*
+	 * Returns whether the location is inside the bounding box, a box with a minimum
+	 * longitude greater than its maximum crosses the antimeridian
+	 */
+	public static boolean contains(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude, Location location) {
+
+		if(location.getLatitude() < minLatitude || location.getLatitude() > maxLatitude) {
+
+			return false;
+		}
+
+		if(minLongitude <= maxLongitude) {
+
+			return location.getLongitude() >= minLongitude && location.getLongitude() <= maxLongitude;
+		}
+
+		return location.getLongitude() >= minLongitude || location.getLongitude() <= maxLongitude;
+	}
+
+	/*
+	 * Returns the locations within radius meters of the coordinate, nearest first
+	 */
+	public static List<Location> within(Collection<Location> locations, double latitude, double longitude, double radius) {
+
+		List<Location> withinRadius = new ArrayList<Location>();
+
+		for(Location location : locations) {
+
+			if(distance(location, latitude, longitude) <= radius) {
+
+				withinRadius.add(location);
+			}
+		}
+
+		sortByDistance(withinRadius, latitude, longitude);
+		return withinRadius;
+	}
+
+	public static void sortByDistance(List<Location> locations, final double latitude, final double longitude) {
+
+		Collections.sort(locations, new Comparator<Location>() {
+
+			public int compare(Location location1, Location location2) {
+
+				return Double.compare(distance(location1, latitude, longitude), distance(location2, latitude, longitude));
+			}
+		});
+	}
+}
@@ -0,0 +1,33 @@
+package org.artifactly.service.ioc;
+
+import java.util.logging.Logger;
+
+import org.artifactly.service.metrics.RpcCounter;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Stage;
+import com.google.inject.servlet.GuiceServletContextListener;
+
+/*
+ * Creates the one injector of the application. The production stage creates
+ * all singletons up front, so the first request does not pay for them.
+ */
+public class ServiceContextListener extends GuiceServletContextListener {
+
+	private static final Logger logger = Logger.getLogger(ServiceContextListener.class.getName());
+
+	@Override
+	protected Injector getInjector() {
+
+		long start = System.currentTimeMillis();
+
+		// Datastore and memcache calls are counted per request for the metrics
+		RpcCounter.install();
+
+		Injector injector = Guice.createInjector(Stage.PRODUCTION, new ServiceModule(), new WebModule());
+		logger.info("Injector created in " + (System.currentTimeMillis() - start) + " ms");
+
+		return injector;
+	}
+}
@@ -2,21 +2,105 @@ package org.artifactly.service.ioc;
 
 import org.artifactly.service.dao.ArtifactService;
 import org.artifactly.service.dao.ArtifactServiceImpl;
+import org.artifactly.service.dao.ArtifactWriter;
+import org.artifactly.service.dao.Backfill;
+import org.artifactly.service.dao.BatchQuery;
+import org.artifactly.service.dao.BulkImport;
+import org.artifactly.service.dao.CachingArtifactService;
+import org.artifactly.service.dao.CachingLocationService;
+import org.artifactly.service.dao.ChangeLog;
+import org.artifactly.service.dao.DatastoreArtifactService;
+import org.artifactly.service.dao.DatastoreLocationService;
+import org.artifactly.service.dao.EntityCache;
+import org.artifactly.service.dao.ExpiredArtifactSweeper;
+import org.artifactly.service.dao.GeoCellQuery;
+import org.artifactly.service.dao.LocationAliases;
+import org.artifactly.service.dao.LocationArtifacts;
+import org.artifactly.service.dao.LocationMembership;
 import org.artifactly.service.dao.LocationService;
 import org.artifactly.service.dao.LocationServiceImpl;
 import org.artifactly.service.dao.Manager;
 import org.artifactly.service.dao.ManagerImpl;
+import org.artifactly.service.dao.NearestQuery;
+import org.artifactly.service.dao.PublicFeedQuery;
+import org.artifactly.service.dao.QueryCache;
+import org.artifactly.service.dao.ViewportQuery;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Provides;
 import com.google.inject.Scopes;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.google.inject.name.Names;
 
 public class ServiceModule extends AbstractModule {
 
+	// Cache expiration in seconds, configured through the system properties in appengine-web.xml
+	private static final int LOCATION_CACHE_TTL = Integer.getInteger("artifactly.cache.location.ttl", 300);
+	private static final int ARTIFACT_CACHE_TTL = Integer.getInteger("artifactly.cache.artifact.ttl", 60);
+	private static final int ENTITY_CACHE_TTL = Integer.getInteger("artifactly.cache.entity.ttl", 3600);
+
+	// Expiration of the last results, served stale when the datastore misses its read deadline
+	private static final int STALE_CACHE_TTL = Integer.getInteger("artifactly.cache.stale.ttl", 86400);
+
+	// Entities cached by each instance
+	private static final int ENTITY_CACHE_SIZE = Integer.getInteger("artifactly.cache.entity.size", 10000);
+	
+	// Implementation behind the caches, either "jdo" or the low-level "datastore" API
+	private static final String DAO_IMPLEMENTATION = System.getProperty("artifactly.dao.implementation", "jdo");
+
 	@Override
 	protected void configure() {
-		
+
 		bind(Manager.class).to(ManagerImpl.class).in(Scopes.SINGLETON);
-		bind(ArtifactService.class).to(ArtifactServiceImpl.class).in(Scopes.SINGLETON);
-		bind(LocationService.class).to(LocationServiceImpl.class).in(Scopes.SINGLETON);
+		bind(ArtifactService.class).to(CachingArtifactService.class).in(Scopes.SINGLETON);
+		bind(LocationService.class).to(CachingLocationService.class).in(Scopes.SINGLETON);
+		bind(ArtifactWriter.class).in(Scopes.SINGLETON);
+		bind(LocationArtifacts.class).in(Scopes.SINGLETON);
+		bind(LocationMembership.class).in(Scopes.SINGLETON);
+		bind(LocationAliases.class).in(Scopes.SINGLETON);
+		bind(GeoCellQuery.class).in(Scopes.SINGLETON);
+		bind(ExpiredArtifactSweeper.class).in(Scopes.SINGLETON);
+		bind(ViewportQuery.class).in(Scopes.SINGLETON);
+		bind(PublicFeedQuery.class).in(Scopes.SINGLETON);
+		bind(NearestQuery.class).in(Scopes.SINGLETON);
+		bind(Backfill.class).in(Scopes.SINGLETON);
+		bind(BulkImport.class).in(Scopes.SINGLETON);
+		bind(BatchQuery.class).in(Scopes.SINGLETON);
+		bind(ChangeLog.class).in(Scopes.SINGLETON);
+		
+		if("datastore".equals(DAO_IMPLEMENTATION)) {
+			
+			bind(ArtifactService.class).annotatedWith(Names.named("backing")).to(DatastoreArtifactService.class).in(Scopes.SINGLETON);
+			bind(LocationService.class).annotatedWith(Names.named("backing")).to(DatastoreLocationService.class).in(Scopes.SINGLETON);
+		}
+		else {
+			
+			bind(ArtifactService.class).annotatedWith(Names.named("backing")).to(ArtifactServiceImpl.class).in(Scopes.SINGLETON);
+			bind(LocationService.class).annotatedWith(Names.named("backing")).to(LocationServiceImpl.class).in(Scopes.SINGLETON);
+		}
+	}
+
+	@Provides
+	@Singleton
+	@Named("location")
+	QueryCache provideLocationCache() {
+
+		return new QueryCache("location", LOCATION_CACHE_TTL, STALE_CACHE_TTL);
+	}
+
+	@Provides
+	@Singleton
+	@Named("artifact")
+	QueryCache provideArtifactCache() {
+
+		return new QueryCache("artifact", ARTIFACT_CACHE_TTL, STALE_CACHE_TTL);
+	}
+
+	@Provides
+	@Singleton
+	EntityCache provideEntityCache(Manager manager) {
+
+		return new EntityCache(manager, ENTITY_CACHE_SIZE, ENTITY_CACHE_TTL);
 	}
 }
@@ -0,0 +1,33 @@
+package org.artifactly.service.ioc;
+
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.sun.jersey.guice.spi.container.servlet.GuiceContainer;
+import com.sun.jersey.spi.container.servlet.WebConfig;
+
+/*
+ * Jersey container that logs how long building the web application took
+ */
+public class TimedGuiceContainer extends GuiceContainer {
+
+	private static final long serialVersionUID = 1L;
+	private static final Logger logger = Logger.getLogger(TimedGuiceContainer.class.getName());
+
+	@Inject
+	public TimedGuiceContainer(Injector injector) {
+
+		super(injector);
+	}
+
+	@Override
+	protected void init(WebConfig webConfig) throws ServletException {
+
+		long start = System.currentTimeMillis();
+		super.init(webConfig);
+		logger.info("Jersey initialized in " + (System.currentTimeMillis() - start) + " ms");
+	}
+}
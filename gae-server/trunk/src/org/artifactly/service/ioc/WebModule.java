@@ -0,0 +1,71 @@
+package org.artifactly.service.ioc;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.artifactly.service.metrics.Metrics;
+import org.artifactly.service.metrics.MetricsFilterFactory;
+import org.artifactly.service.rest.ArtifactResource;
+import org.artifactly.service.rest.BatchResource;
+import org.artifactly.service.rest.ConditionalGetFilterFactory;
+import org.artifactly.service.rest.ImportResource;
+import org.artifactly.service.rest.LocationResource;
+import org.artifactly.service.rest.MetricsResource;
+import org.artifactly.service.rest.ObjectMapperResolver;
+import org.artifactly.service.rest.ProtobufMessageBodyWriter;
+import org.artifactly.service.rest.SyncResource;
+import org.artifactly.service.web.ArtifactBackfillServlet;
+import org.artifactly.service.web.ExpiredArtifactSweepServlet;
+import org.artifactly.service.web.ImportChunkServlet;
+import org.artifactly.service.web.LocationBackfillServlet;
+import org.artifactly.service.web.MembershipBackfillServlet;
+import org.artifactly.service.web.ReadModelServlet;
+import org.artifactly.service.web.WarmupServlet;
+
+import com.google.inject.Scopes;
+import com.sun.jersey.api.core.ResourceConfig;
+import com.sun.jersey.guice.JerseyServletModule;
+
+public class WebModule extends JerseyServletModule {
+
+	@Override
+	protected void configureServlets() {
+
+		// Resources are bound explicitly, which spares Jersey the package scan on a cold start
+		bind(ArtifactResource.class).in(Scopes.SINGLETON);
+		bind(LocationResource.class).in(Scopes.SINGLETON);
+		bind(MetricsResource.class).in(Scopes.SINGLETON);
+		bind(SyncResource.class).in(Scopes.SINGLETON);
+		bind(ImportResource.class).in(Scopes.SINGLETON);
+		bind(BatchResource.class).in(Scopes.SINGLETON);
+
+		bind(ProtobufMessageBodyWriter.class).in(Scopes.SINGLETON);
+		bind(ObjectMapperResolver.class).in(Scopes.SINGLETON);
+
+		bind(Metrics.class).in(Scopes.SINGLETON);
+		bind(MetricsFilterFactory.class).in(Scopes.SINGLETON);
+		bind(ConditionalGetFilterFactory.class).in(Scopes.SINGLETON);
+
+		bind(TimedGuiceContainer.class).in(Scopes.SINGLETON);
+		bind(WarmupServlet.class).in(Scopes.SINGLETON);
+		bind(ExpiredArtifactSweepServlet.class).in(Scopes.SINGLETON);
+		bind(ArtifactBackfillServlet.class).in(Scopes.SINGLETON);
+		bind(LocationBackfillServlet.class).in(Scopes.SINGLETON);
+		bind(MembershipBackfillServlet.class).in(Scopes.SINGLETON);
+		bind(ImportChunkServlet.class).in(Scopes.SINGLETON);
+		bind(ReadModelServlet.class).in(Scopes.SINGLETON);
+
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put("com.sun.jersey.api.json.POJOMappingFeature", "true");
+		parameters.put(ResourceConfig.PROPERTY_RESOURCE_FILTER_FACTORIES, MetricsFilterFactory.class.getName() + "," + ConditionalGetFilterFactory.class.getName());
+
+		serve("/api/*").with(TimedGuiceContainer.class, parameters);
+		serve("/_ah/warmup").with(WarmupServlet.class);
+		serve("/tasks/sweep-expired").with(ExpiredArtifactSweepServlet.class);
+		serve("/tasks/backfill-artifacts").with(ArtifactBackfillServlet.class);
+		serve("/tasks/backfill-locations").with(LocationBackfillServlet.class);
+		serve("/tasks/backfill-memberships").with(MembershipBackfillServlet.class);
+		serve("/tasks/import-chunk").with(ImportChunkServlet.class);
+		serve("/tasks/add-to-read-model").with(ReadModelServlet.class);
+	}
+}
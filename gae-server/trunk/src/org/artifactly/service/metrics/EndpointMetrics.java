@@ -0,0 +1,135 @@
+package org.artifactly.service.metrics;
+
+/*
+ * Request statistics of one resource method. Latencies are kept in a histogram
+ * with fixed buckets, so the percentiles are the upper bound of their bucket.
+ */
+public class EndpointMetrics {
+
+	// Upper bounds of the latency buckets in milliseconds, the last bucket is unbounded
+	private static final long[] BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000};
+
+	private long[] buckets = new long[BOUNDS.length + 1];
+	private long requests = 0;
+	private long totalLatency = 0;
+	private long maxLatency = 0;
+	private long datastoreCalls = 0;
+	private long memcacheCalls = 0;
+	private long responseBytes = 0;
+	private long staleResponses = 0;
+
+	public synchronized void record(long latency, int datastoreCalls, int memcacheCalls, long responseBytes, boolean stale) {
+
+		int bucket = 0;
+
+		while(bucket < BOUNDS.length && latency > BOUNDS[bucket]) {
+
+			bucket++;
+		}
+
+		buckets[bucket]++;
+		requests++;
+		totalLatency += latency;
+		maxLatency = Math.max(maxLatency, latency);
+		this.datastoreCalls += datastoreCalls;
+		this.memcacheCalls += memcacheCalls;
+		this.responseBytes += responseBytes;
+
+		if(stale) {
+
+			staleResponses++;
+		}
+	}
+
+	public synchronized long getRequests() {
+
+		return requests;
+	}
+
+	public synchronized long getMeanLatency() {
+
+		return 0 == requests ? 0 : totalLatency / requests;
+	}
+
+	public synchronized long getMaxLatency() {
+
+		return maxLatency;
+	}
+
+	public synchronized long getP50() {
+
+		return percentile(0.50);
+	}
+
+	public synchronized long getP95() {
+
+		return percentile(0.95);
+	}
+
+	public synchronized long getP99() {
+
+		return percentile(0.99);
+	}
+
+	public synchronized long getDatastoreCalls() {
+
+		return datastoreCalls;
+	}
+
+	public synchronized long getMemcacheCalls() {
+
+		return memcacheCalls;
+	}
+
+	public synchronized long getResponseBytes() {
+
+		return responseBytes;
+	}
+
+	/*
+	 * Returns the number of responses served from stale cached results, after the
+	 * datastore missed its read deadline
+	 */
+	public synchronized long getStaleResponses() {
+
+		return staleResponses;
+	}
+
+	public synchronized double getDatastoreCallsPerRequest() {
+
+		return 0 == requests ? 0 : (double) datastoreCalls / requests;
+	}
+
+	public synchronized double getMemcacheCallsPerRequest() {
+
+		return 0 == requests ? 0 : (double) memcacheCalls / requests;
+	}
+
+	public synchronized long getMeanResponseBytes() {
+
+		return 0 == requests ? 0 : responseBytes / requests;
+	}
+
+	private long percentile(double quantile) {
+
+		if(0 == requests) {
+
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(quantile * requests);
+		long seen = 0;
+
+		for(int bucket = 0; bucket < BOUNDS.length; bucket++) {
+
+			seen += buckets[bucket];
+
+			if(seen >= rank) {
+
+				return Math.min(BOUNDS[bucket], maxLatency);
+			}
+		}
+
+		return maxLatency;
+	}
+}
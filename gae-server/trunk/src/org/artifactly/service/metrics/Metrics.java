@@ -0,0 +1,37 @@
+package org.artifactly.service.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ * Registry of the request statistics of the instance, by endpoint name
+ */
+public class Metrics {
+
+	private ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<String, EndpointMetrics>();
+
+	public EndpointMetrics get(String endpoint) {
+
+		EndpointMetrics metrics = endpoints.get(endpoint);
+
+		if(null == metrics) {
+
+			EndpointMetrics newMetrics = new EndpointMetrics();
+			metrics = endpoints.putIfAbsent(endpoint, newMetrics);
+
+			if(null == metrics) {
+
+				metrics = newMetrics;
+			}
+		}
+
+		return metrics;
+	}
+
+	public Map<String, EndpointMetrics> getAll() {
+
+		return new TreeMap<String, EndpointMetrics>(endpoints);
+	}
+}
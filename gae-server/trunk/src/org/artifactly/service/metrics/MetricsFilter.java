@@ -0,0 +1,119 @@
+package org.artifactly.service.metrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.artifactly.service.dao.StaleResults;
+
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+import com.sun.jersey.spi.container.ContainerResponseWriter;
+import com.sun.jersey.spi.container.ResourceFilter;
+
+/*
+ * Measures the requests of one resource method. The request is recorded when the
+ * response has been written, so streamed entities are included in the latency,
+ * the RPC counts and the response size. Responses served from stale cached results
+ * are counted apart as well.
+ */
+public class MetricsFilter implements ResourceFilter, ContainerRequestFilter, ContainerResponseFilter {
+
+	private static final String START_PROPERTY = MetricsFilter.class.getName() + ".start";
+
+	private EndpointMetrics endpointMetrics = null;
+
+	public MetricsFilter(EndpointMetrics endpointMetrics) {
+
+		this.endpointMetrics = endpointMetrics;
+	}
+
+	public ContainerRequestFilter getRequestFilter() {
+
+		return this;
+	}
+
+	public ContainerResponseFilter getResponseFilter() {
+
+		return this;
+	}
+
+	public ContainerRequest filter(ContainerRequest request) {
+
+		RpcCounter.reset();
+		StaleResults.reset();
+		request.getProperties().put(START_PROPERTY, System.currentTimeMillis());
+
+		return request;
+	}
+
+	public ContainerResponse filter(ContainerRequest request, ContainerResponse response) {
+
+		Long start = (Long) request.getProperties().get(START_PROPERTY);
+
+		if(null != start) {
+
+			response.setContainerResponseWriter(new MeasuringWriter(response.getContainerResponseWriter(), start));
+		}
+
+		return response;
+	}
+
+	private class MeasuringWriter implements ContainerResponseWriter {
+
+		private ContainerResponseWriter writer = null;
+		private CountingOutputStream outputStream = null;
+		private long start = 0;
+
+		public MeasuringWriter(ContainerResponseWriter writer, long start) {
+
+			this.writer = writer;
+			this.start = start;
+		}
+
+		public OutputStream writeStatusAndHeaders(long contentLength, ContainerResponse response) throws IOException {
+
+			outputStream = new CountingOutputStream(writer.writeStatusAndHeaders(contentLength, response));
+			return outputStream;
+		}
+
+		public void finish() throws IOException {
+
+			writer.finish();
+
+			long responseBytes = null == outputStream ? 0 : outputStream.getCount();
+			endpointMetrics.record(System.currentTimeMillis() - start, RpcCounter.getDatastoreCalls(), RpcCounter.getMemcacheCalls(), responseBytes, StaleResults.isServed());
+		}
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		private long count = 0;
+
+		public CountingOutputStream(OutputStream outputStream) {
+
+			super(outputStream);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+
+			out.write(b, off, len);
+			count += len;
+		}
+
+		public long getCount() {
+
+			return count;
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package org.artifactly.service.metrics;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.google.inject.Inject;
+import com.sun.jersey.api.model.AbstractMethod;
+import com.sun.jersey.api.model.AbstractSubResourceMethod;
+import com.sun.jersey.spi.container.ResourceFilter;
+import com.sun.jersey.spi.container.ResourceFilterFactory;
+
+/*
+ * Adds a metrics filter to every resource method. Overloaded methods are told
+ * apart by their path template.
+ */
+public class MetricsFilterFactory implements ResourceFilterFactory {
+
+	private Metrics metrics = null;
+
+	@Inject
+	public MetricsFilterFactory(Metrics metrics) {
+
+		this.metrics = metrics;
+	}
+
+	public List<ResourceFilter> create(AbstractMethod method) {
+
+		String endpoint = method.getResource().getResourceClass().getSimpleName() + "." + method.getMethod().getName();
+
+		if(method instanceof AbstractSubResourceMethod) {
+
+			endpoint += " " + ((AbstractSubResourceMethod) method).getPath().getValue();
+		}
+
+		return Collections.<ResourceFilter>singletonList(new MetricsFilter(metrics.get(endpoint)));
+	}
+}
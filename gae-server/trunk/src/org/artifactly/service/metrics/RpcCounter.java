@@ -0,0 +1,112 @@
+package org.artifactly.service.metrics;
+
+import java.util.concurrent.Future;
+
+import com.google.apphosting.api.ApiProxy;
+import com.google.apphosting.api.ApiProxy.ApiConfig;
+import com.google.apphosting.api.ApiProxy.ApiProxyException;
+import com.google.apphosting.api.ApiProxy.Delegate;
+import com.google.apphosting.api.ApiProxy.Environment;
+import com.google.apphosting.api.ApiProxy.LogRecord;
+
+/*
+ * ApiProxy delegate counting the datastore and memcache calls made by the current
+ * request thread. Every other call is passed through uncounted.
+ */
+public class RpcCounter implements Delegate<Environment> {
+
+	private static final String DATASTORE_PACKAGE = "datastore_v3";
+	private static final String MEMCACHE_PACKAGE = "memcache";
+
+	private static final int DATASTORE = 0;
+	private static final int MEMCACHE = 1;
+
+	private static final ThreadLocal<int[]> calls = new ThreadLocal<int[]>() {
+
+		@Override
+		protected int[] initialValue() {
+
+			return new int[2];
+		}
+	};
+
+	private Delegate<Environment> delegate = null;
+
+	private RpcCounter(Delegate<Environment> delegate) {
+
+		this.delegate = delegate;
+	}
+
+	/*
+	 * Wraps the delegate installed by the runtime, installing the counter twice has no effect
+	 */
+	@SuppressWarnings("unchecked")
+	public static synchronized void install() {
+
+		Delegate<Environment> delegate = ApiProxy.getDelegate();
+
+		if(null != delegate && !(delegate instanceof RpcCounter)) {
+
+			ApiProxy.setDelegate(new RpcCounter(delegate));
+		}
+	}
+
+	/*
+	 * Puts the wrapped delegate back, for environments that expect their own delegate
+	 */
+	public static synchronized void uninstall() {
+
+		Delegate<?> delegate = ApiProxy.getDelegate();
+
+		if(delegate instanceof RpcCounter) {
+
+			ApiProxy.setDelegate(((RpcCounter) delegate).delegate);
+		}
+	}
+
+	public static void reset() {
+
+		int[] counts = calls.get();
+		counts[DATASTORE] = 0;
+		counts[MEMCACHE] = 0;
+	}
+
+	public static int getDatastoreCalls() {
+
+		return calls.get()[DATASTORE];
+	}
+
+	public static int getMemcacheCalls() {
+
+		return calls.get()[MEMCACHE];
+	}
+
+	public byte[] makeSyncCall(Environment environment, String packageName, String methodName, byte[] request) throws ApiProxyException {
+
+		count(packageName);
+		return delegate.makeSyncCall(environment, packageName, methodName, request);
+	}
+
+	public Future<byte[]> makeAsyncCall(Environment environment, String packageName, String methodName, byte[] request, ApiConfig apiConfig) {
+
+		count(packageName);
+		return delegate.makeAsyncCall(environment, packageName, methodName, request, apiConfig);
+	}
+
+	public void log(Environment environment, LogRecord record) {
+
+		delegate.log(environment, record);
+	}
+
+	private static void count(String packageName) {
+
+		if(DATASTORE_PACKAGE.equals(packageName)) {
+
+			calls.get()[DATASTORE]++;
+		}
+		else if(MEMCACHE_PACKAGE.equals(packageName)) {
+
+			calls.get()[MEMCACHE]++;
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package org.artifactly.service.pojo;
 
 
+import java.io.Serializable;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
@@ -14,7 +15,12 @@ import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.users.User;
 
 @PersistenceCapable(detachable = "true")
-public class Artifact {
+public class Artifact implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	// Expiration of artifacts without an expiration date, the end of the year 9999
+	public static final long NEVER_EXPIRES = 253402300799000L;
 	
 	@PrimaryKey
     @Persistent(valueStrategy = IdGeneratorStrategy.IDENTITY)
@@ -26,21 +32,34 @@ public class Artifact {
 	@Persistent
 	private User creator;
 	
+	// User id of the creator, indexed to list the artifacts of a user
+	@Persistent
+	private String creatorId;
+	
 	@Persistent
 	private Date creationDate;
 	
 	@Persistent
 	private Date expirationDate;
 	
+	// The expiration date or NEVER_EXPIRES, so unexpired artifacts are found with an indexed filter
+	@Persistent
+	private Date expiresAt = new Date(NEVER_EXPIRES);
+	
 	@Persistent
 	private Boolean isPublic;
 	
 	@Persistent
 	private Set<Key> locations = new HashSet<Key>();
+	
+	// Modification version, increases with every write
+	@Persistent
+	private Long version;
 
 	public Artifact(User creator, String name, Date creationDate, Boolean isPublic) {
 		
 		this.creator = creator;
+		this.creatorId = null == creator ? null : creator.getUserId();
 		this.name = name;
 		this.creationDate = creationDate;
 		this.isPublic = isPublic;
@@ -50,6 +69,10 @@ public class Artifact {
 		return key;
 	}
 
+	public void setKey(Key key) {
+		this.key = key;
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -80,6 +103,7 @@ public class Artifact {
 
 	public void setExpirationDate(Date expirationDate) {
 		this.expirationDate = expirationDate;
+		this.expiresAt = null == expirationDate ? new Date(NEVER_EXPIRES) : expirationDate;
 	}
 
 	public User getCreator() {
@@ -88,6 +112,7 @@ public class Artifact {
 
 	public void setCreator(User creator) {
 		this.creator = creator;
+		this.creatorId = null == creator ? null : creator.getUserId();
 	}
 
 	public Boolean getIsPublic() {
@@ -97,4 +122,12 @@ public class Artifact {
 	public void setIsPublic(Boolean isPublic) {
 		this.isPublic = isPublic;
 	}
+
+	public Long getVersion() {
+		return version;
+	}
+
+	public void setVersion(Long version) {
+		this.version = version;
+	}
 }
@@ -1,17 +1,22 @@
 package org.artifactly.service.pojo;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.io.Serializable;
+import java.util.List;
 
 import javax.jdo.annotations.IdGeneratorStrategy;
 import javax.jdo.annotations.PersistenceCapable;
 import javax.jdo.annotations.Persistent;
 import javax.jdo.annotations.PrimaryKey;
 
+import org.artifactly.service.geo.GeoHash;
+import org.codehaus.jackson.annotate.JsonIgnore;
+
 import com.google.appengine.api.datastore.Key;
 
 @PersistenceCapable(detachable = "true")
-public class Location {
+public class Location implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	@PrimaryKey
     @Persistent(valueStrategy = IdGeneratorStrategy.IDENTITY)
@@ -24,24 +29,34 @@ public class Location {
 	private double longitude;
 	
 	@Persistent
-	private Set<Key> artifacts = new HashSet<Key>();
+	private List<String> geocells;
+	
+	// Modification version, increases with every write
+	@Persistent
+	private Long version;
 	
 	public Location(double latitude, double longitude) {
 		
 		this.latitude = latitude;
 		this.longitude = longitude;
+		this.geocells = GeoHash.cells(latitude, longitude);
 	}
 
 	public Key getKey() {
 		return key;
 	}
 
+	public void setKey(Key key) {
+		this.key = key;
+	}
+
 	public double getLatitude() {
 		return latitude;
 	}
 
 	public void setLatitude(double latitude) {
 		this.latitude = latitude;
+		this.geocells = GeoHash.cells(latitude, longitude);
 	}
 
 	public double getLongitude() {
@@ -50,13 +65,24 @@ public class Location {
 
 	public void setLongitude(double longitude) {
 		this.longitude = longitude;
+		this.geocells = GeoHash.cells(latitude, longitude);
+	}
+
+	// Derived from the coordinate for the queries, not part of the JSON
+	@JsonIgnore
+	public List<String> getGeocells() {
+		return geocells;
+	}
+
+	public void setGeocells(List<String> geocells) {
+		this.geocells = geocells;
 	}
 
-	public Set<Key> getArtifacts() {
-		return artifacts;
+	public Long getVersion() {
+		return version;
 	}
 
-	public void setArtifacts(Set<Key> artifacts) {
-		this.artifacts = artifacts;
+	public void setVersion(Long version) {
+		this.version = version;
 	}
 }
@@ -8,51 +8,230 @@ import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.artifactly.service.dao.ArtifactService;
+import org.artifactly.service.dao.Expiry;
+import org.artifactly.service.dao.LocationPages;
+import org.artifactly.service.dao.NearestQuery;
 import org.artifactly.service.dao.PageableResults;
-import org.artifactly.service.ioc.ServiceModule;
+import org.artifactly.service.dao.PublicFeedQuery;
+import org.artifactly.service.dao.Viewport;
+import org.artifactly.service.dao.ViewportQuery;
+import org.artifactly.service.geo.GeoUtils;
 import org.artifactly.service.pojo.Artifact;
 import org.artifactly.service.pojo.Location;
 
+import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.users.User;
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
-import com.google.inject.Guice;
-import com.google.inject.Injector;
+import com.google.inject.Inject;
 import com.sun.jersey.spi.resource.Singleton;
 
 @Singleton
 @Path("/artifact/")
 public class ArtifactResource {
 
-	private Injector injector = Guice.createInjector(new ServiceModule());
-	private ArtifactService artifactService = injector.getInstance(ArtifactService.class);
+	private static final int MAX_PUBLIC_LIMIT = 100;
+	private static final int MAX_NEAREST = 100;
+	private static final int MAX_PAGE_LIMIT = 1000;
+
+	private ArtifactService artifactService = null;
+	private ViewportQuery viewportQuery = null;
+	private PublicFeedQuery publicFeedQuery = null;
+	private NearestQuery nearestQuery = null;
+	private ObjectMapperResolver objectMapperResolver = null;
+	
+	@Inject
+	public ArtifactResource(ArtifactService artifactService, ViewportQuery viewportQuery, PublicFeedQuery publicFeedQuery, NearestQuery nearestQuery, ObjectMapperResolver objectMapperResolver) {
+		
+		this.artifactService = artifactService;
+		this.viewportQuery = viewportQuery;
+		this.publicFeedQuery = publicFeedQuery;
+		this.nearestQuery = nearestQuery;
+		this.objectMapperResolver = objectMapperResolver;
+	}
 	
 	@GET
+	@Versioned("artifact")
 	@Path("/all/")
 	@Produces("application/json")
-	public List<Artifact> getArtifacts() {
+	public StreamingOutput getArtifacts() {
 
-		return artifactService.getAll();
+		return new JsonStreamingOutput<Artifact>(objectMapperResolver.getContext(Artifact.class), artifactService.iterateAll());
 	}
 	
 	@GET
+	@Versioned("artifact")
 	@Path("/page/{offset}/{limit}/")
-	@Produces("application/json")
+	@Produces({ "application/json", ProtobufEncoding.MEDIA_TYPE })
 	public PageableResults<Artifact> getArtifacts(@PathParam("offset") String offset,
 												  @PathParam("limit")  long limit) {
 
-		return artifactService.get(offset, limit);
+		if(!Expiry.isValid(offset) || limit < 1) {
+
+			throw new WebApplicationException(Response.Status.BAD_REQUEST);
+		}
+
+		return artifactService.get(offset, Math.min(limit, MAX_PAGE_LIMIT));
 	}
 
+	/*
+	 * The artifacts created by the current user, newest first, at most MAX_PAGE_LIMIT per page
+	 */
 	@GET
+	@Versioned(value = "artifact", scope = VersionScope.CREATOR, perUser = true)
+	@Path("/mine/{offset}/{limit}/")
+	@Produces({ "application/json", ProtobufEncoding.MEDIA_TYPE })
+	public PageableResults<Artifact> getMyArtifacts(@PathParam("offset") String offset,
+													@PathParam("limit")  long limit) {
+
+		UserService userService = UserServiceFactory.getUserService();
+
+		if(!userService.isUserLoggedIn()) {
+
+			throw new WebApplicationException(Response.Status.UNAUTHORIZED);
+		}
+
+		if(!isValidCursor(offset) || limit < 1) {
+
+			throw new WebApplicationException(Response.Status.BAD_REQUEST);
+		}
+
+		return artifactService.getCreatedBy(userService.getCurrentUser().getUserId(), offset, Math.min(limit, MAX_PAGE_LIMIT));
+	}
+
+	/*
+	 * The first MAX_PAGE_LIMIT artifacts at the coordinate
+	 */
+	@GET
+	@Versioned(value = "artifact", scope = VersionScope.COORDINATE)
 	@Path("/{latitude}/{longitude}")
-	@Produces("application/json")
+	@Produces({ "application/json", ProtobufEncoding.MEDIA_TYPE })
 	public List<Artifact> getLocations(@PathParam("latitude") double latitude,
 									   @PathParam("longitude")  double longitude) {
 
-		return artifactService.get(latitude, longitude);
+		return artifactService.get(latitude, longitude, null, MAX_PAGE_LIMIT).getResults();
+	}
+
+	@GET
+	@Versioned(value = "artifact", scope = VersionScope.COORDINATE)
+	@Path("/{latitude}/{longitude}/page/{offset}/{limit}")
+	@Produces({ "application/json", ProtobufEncoding.MEDIA_TYPE })
+	public PageableResults<Artifact> getLocations(@PathParam("latitude") double latitude,
+												  @PathParam("longitude") double longitude,
+												  @PathParam("offset") String offset,
+												  @PathParam("limit") long limit) {
+
+		if(!LocationPages.isValid(offset) || limit < 1 || limit > MAX_PAGE_LIMIT) {
+
+			throw new WebApplicationException(Response.Status.BAD_REQUEST);
+		}
+
+		return artifactService.get(latitude, longitude, offset, limit);
+	}
+
+	/*
+	 * The first MAX_PAGE_LIMIT artifacts within radius meters of the coordinate, nearest location first
+	 */
+	@GET
+	@Versioned(value = "artifact", scope = VersionScope.GRID_RADIUS)
+	@Path("/{latitude}/{longitude}/{radius}")
+	@Produces({ "application/json", ProtobufEncoding.MEDIA_TYPE })
+	public List<Artifact> getArtifacts(@PathParam("latitude") double latitude,
+									   @PathParam("longitude") double longitude,
+									   @PathParam("radius") double radius) {
+
+		if(!GeoUtils.isValid(latitude, longitude, radius)) {
+
+			throw new WebApplicationException(Response.Status.BAD_REQUEST);
+		}
+
+		return artifactService.get(latitude, longitude, radius, null, MAX_PAGE_LIMIT).getResults();
+	}
+
+	@GET
+	@Versioned(value = "artifact", scope = VersionScope.GRID_RADIUS)
+	@Path("/{latitude}/{longitude}/{radius}/page/{offset}/{limit}")
+	@Produces({ "application/json", ProtobufEncoding.MEDIA_TYPE })
+	public PageableResults<Artifact> getArtifacts(@PathParam("latitude") double latitude,
+												  @PathParam("longitude") double longitude,
+												  @PathParam("radius") double radius,
+												  @PathParam("offset") String offset,
+												  @PathParam("limit") long limit) {
+
+		if(!GeoUtils.isValid(latitude, longitude, radius) || !LocationPages.isValid(offset) || limit < 1 || limit > MAX_PAGE_LIMIT) {
+
+			throw new WebApplicationException(Response.Status.BAD_REQUEST);
+		}
+
+		return artifactService.get(latitude, longitude, radius, offset, limit);
+	}
+
+	/*
+	 * The public artifacts within radius meters of the coordinate, nearest first
+	 */
+	@GET
+	@Versioned(value = "artifact", scope = VersionScope.RADIUS)
+	@Path("/public/{latitude}/{longitude}/{radius}/{limit}")
+	@Produces({ "application/json", ProtobufEncoding.MEDIA_TYPE })
+	public List<Artifact> getPublicArtifacts(@PathParam("latitude") double latitude,
+											 @PathParam("longitude") double longitude,
+											 @PathParam("radius") double radius,
+											 @PathParam("limit") int limit) {
+
+		if(!GeoUtils.isValid(latitude, longitude, radius) || limit < 1 || limit > MAX_PUBLIC_LIMIT) {
+
+			throw new WebApplicationException(Response.Status.BAD_REQUEST);
+		}
+
+		return publicFeedQuery.get(latitude, longitude, radius, limit);
+	}
+
+	/*
+	 * The k artifacts nearest to the coordinate, nearest first
+	 */
+	@GET
+	@Versioned("artifact")
+	@Path("/nearest/{latitude}/{longitude}/{k}")
+	@Produces({ "application/json", ProtobufEncoding.MEDIA_TYPE })
+	public List<Artifact> getNearestArtifacts(@PathParam("latitude") double latitude,
+											  @PathParam("longitude") double longitude,
+											  @PathParam("k") int k) {
+
+		if(Math.abs(latitude) > 90.0 || Math.abs(longitude) > 180.0 || k < 1 || k > MAX_NEAREST) {
+
+			throw new WebApplicationException(Response.Status.BAD_REQUEST);
+		}
+
+		return nearestQuery.get(latitude, longitude, k);
+	}
+
+	/*
+	 * The artifacts in a map viewport, or the clusters of their locations when there are
+	 * many. A viewport with minLongitude greater than maxLongitude crosses the antimeridian.
+	 */
+	@GET
+	@Versioned(value = { "artifact", "location" }, scope = VersionScope.VIEWPORT)
+	@Path("/bbox/{minLatitude}/{minLongitude}/{maxLatitude}/{maxLongitude}/{zoom}")
+	@Produces("application/json")
+	public Viewport getViewport(@PathParam("minLatitude") double minLatitude,
+								@PathParam("minLongitude") double minLongitude,
+								@PathParam("maxLatitude") double maxLatitude,
+								@PathParam("maxLongitude") double maxLongitude,
+								@PathParam("zoom") int zoom) {
+
+		if(minLatitude > maxLatitude || minLatitude < -90.0 || maxLatitude > 90.0 ||
+		   Math.abs(minLongitude) > 180.0 || Math.abs(maxLongitude) > 180.0 ||
+		   zoom < 0 || zoom > ViewportQuery.MAX_ZOOM) {
+
+			throw new WebApplicationException(Response.Status.BAD_REQUEST);
+		}
+
+		return viewportQuery.get(minLatitude, minLongitude, maxLatitude, maxLongitude, zoom);
 	}
 
 	@PUT
@@ -76,4 +255,25 @@ public class ArtifactResource {
 
 		return null;
 	}
+
+	/*
+	 * Returns false if the offset is neither the start of a listing nor a cursor
+	 */
+	private static boolean isValidCursor(String offset) {
+
+		if(null == offset || 0 == offset.length() || "0".equals(offset)) {
+
+			return true;
+		}
+
+		try {
+
+			Cursor.fromWebSafeString(offset);
+			return true;
+
+		} catch (IllegalArgumentException e) {
+
+			return false;
+		}
+	}
 }
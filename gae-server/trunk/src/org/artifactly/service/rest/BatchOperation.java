@@ -0,0 +1,67 @@
+package org.artifactly.service.rest;
+
+import java.io.Serializable;
+
+/*
+ * One operation of a batch request. The type names the operation, the other
+ * properties are its parameters, as in the paths of the single requests.
+ */
+public class BatchOperation implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String GET_LOCATION = "getLocation";
+	public static final String GET_ARTIFACTS = "getArtifacts";
+	public static final String CREATE_LOCATION = "createLocation";
+	public static final String CREATE_ARTIFACT = "createArtifact";
+
+	private String type = null;
+	private Double latitude = null;
+	private Double longitude = null;
+	private String name = null;
+	private Boolean isPublic = null;
+
+	public BatchOperation() {
+
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public Double getLatitude() {
+		return latitude;
+	}
+
+	public void setLatitude(Double latitude) {
+		this.latitude = latitude;
+	}
+
+	public Double getLongitude() {
+		return longitude;
+	}
+
+	public void setLongitude(Double longitude) {
+		this.longitude = longitude;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public Boolean getIsPublic() {
+		return isPublic;
+	}
+
+	public void setIsPublic(Boolean isPublic) {
+		this.isPublic = isPublic;
+	}
+}
@@ -0,0 +1,27 @@
+package org.artifactly.service.rest;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Operations of a batch request, executed in their order
+ */
+public class BatchRequest implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private List<BatchOperation> operations = new ArrayList<BatchOperation>();
+
+	public BatchRequest() {
+
+	}
+
+	public List<BatchOperation> getOperations() {
+		return operations;
+	}
+
+	public void setOperations(List<BatchOperation> operations) {
+		this.operations = operations;
+	}
+}
@@ -0,0 +1,219 @@
+package org.artifactly.service.rest;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+import org.artifactly.service.dao.ArtifactService;
+import org.artifactly.service.dao.BatchQuery;
+import org.artifactly.service.dao.LocationService;
+import org.artifactly.service.pojo.Artifact;
+import org.artifactly.service.pojo.Location;
+
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.inject.Inject;
+import com.sun.jersey.spi.resource.Singleton;
+
+/*
+ * Executes a list of operations in one request, so a client saves a round trip per
+ * operation. The operations run in their order and every one gets a result of its
+ * own. Consecutive reads are looked up together with batch gets, creates run one by
+ * one as their single requests would.
+ */
+@Singleton
+@Path("/batch/")
+public class BatchResource {
+
+	private static final Logger logger = Logger.getLogger(BatchResource.class.getName());
+
+	private static final int MAX_OPERATIONS = 50;
+
+	private LocationService locationService = null;
+	private ArtifactService artifactService = null;
+	private BatchQuery batchQuery = null;
+
+	@Inject
+	public BatchResource(LocationService locationService, ArtifactService artifactService, BatchQuery batchQuery) {
+
+		this.locationService = locationService;
+		this.artifactService = artifactService;
+		this.batchQuery = batchQuery;
+	}
+
+	@POST
+	@Consumes("application/json")
+	@Produces("application/json")
+	public List<BatchResult> execute(BatchRequest request) {
+
+		if(null == request || null == request.getOperations() || request.getOperations().size() > MAX_OPERATIONS) {
+
+			throw new WebApplicationException(Response.Status.BAD_REQUEST);
+		}
+
+		List<BatchOperation> operations = request.getOperations();
+		List<BatchResult> results = new ArrayList<BatchResult>(operations.size());
+		int index = 0;
+
+		while(index < operations.size()) {
+
+			int end = index;
+
+			while(end < operations.size() && isRead(operations.get(end))) {
+
+				end++;
+			}
+
+			if(end > index) {
+
+				results.addAll(read(operations.subList(index, end)));
+				index = end;
+			}
+			else {
+
+				results.add(write(operations.get(index)));
+				index++;
+			}
+		}
+
+		return results;
+	}
+
+	/*
+	 * Looks up the locations of all reads with one batch get, and the artifacts of the
+	 * locations found with another
+	 */
+	private List<BatchResult> read(List<BatchOperation> operations) {
+
+		List<BatchResult> results = new ArrayList<BatchResult>(operations.size());
+
+		try {
+
+			List<Location> coordinates = new ArrayList<Location>(operations.size());
+
+			for(BatchOperation operation : operations) {
+
+				coordinates.add(new Location(operation.getLatitude(), operation.getLongitude()));
+			}
+
+			List<Location> locations = batchQuery.getLocations(coordinates);
+			List<Location> artifactLocations = new ArrayList<Location>();
+
+			for(int index = 0; index < operations.size(); index++) {
+
+				if(BatchOperation.GET_ARTIFACTS.equals(operations.get(index).getType()) && null != locations.get(index)) {
+
+					artifactLocations.add(locations.get(index));
+				}
+			}
+
+			List<List<Artifact>> artifacts = batchQuery.getArtifacts(artifactLocations);
+			int artifactIndex = 0;
+
+			for(int index = 0; index < operations.size(); index++) {
+
+				Location location = locations.get(index);
+
+				if(BatchOperation.GET_LOCATION.equals(operations.get(index).getType())) {
+
+					// As the single request, no location is answered without content
+					results.add(null == location ? new BatchResult(Response.Status.NO_CONTENT.getStatusCode(), null) : ok(location));
+				}
+				else if(null == location) {
+
+					results.add(ok(new ArrayList<Artifact>()));
+				}
+				else {
+
+					results.add(ok(artifacts.get(artifactIndex++)));
+				}
+			}
+
+		} catch (RuntimeException e) {
+
+			logger.log(Level.WARNING, "Batch read failed", e);
+			results.clear();
+
+			for(int index = 0; index < operations.size(); index++) {
+
+				results.add(new BatchResult(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), null));
+			}
+		}
+
+		return results;
+	}
+
+	private BatchResult write(BatchOperation operation) {
+
+		if(!isValid(operation)) {
+
+			return new BatchResult(Response.Status.BAD_REQUEST.getStatusCode(), null);
+		}
+
+		try {
+
+			Location location = new Location(operation.getLatitude(), operation.getLongitude());
+
+			if(BatchOperation.CREATE_LOCATION.equals(operation.getType())) {
+
+				return ok(locationService.create(location));
+			}
+
+			UserService userService = UserServiceFactory.getUserService();
+
+			if(!userService.isUserLoggedIn()) {
+
+				return new BatchResult(Response.Status.UNAUTHORIZED.getStatusCode(), null);
+			}
+
+			Artifact artifact = new Artifact(userService.getCurrentUser(), operation.getName(), new Date(), Boolean.TRUE.equals(operation.getIsPublic()));
+			return ok(artifactService.create(artifact, location));
+
+		} catch (RuntimeException e) {
+
+			logger.log(Level.WARNING, "Batch operation " + operation.getType() + " failed", e);
+			return new BatchResult(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), null);
+		}
+	}
+
+	private boolean isRead(BatchOperation operation) {
+
+		return isValid(operation) && (BatchOperation.GET_LOCATION.equals(operation.getType()) || BatchOperation.GET_ARTIFACTS.equals(operation.getType()));
+	}
+
+	private boolean isValid(BatchOperation operation) {
+
+		if(null == operation || null == operation.getType() || null == operation.getLatitude() || null == operation.getLongitude()) {
+
+			return false;
+		}
+
+		if(Math.abs(operation.getLatitude()) > 90.0 || Math.abs(operation.getLongitude()) > 180.0) {
+
+			return false;
+		}
+
+		if(BatchOperation.CREATE_ARTIFACT.equals(operation.getType())) {
+
+			return null != operation.getName() && 0 < operation.getName().length();
+		}
+
+		return BatchOperation.GET_LOCATION.equals(operation.getType()) ||
+			   BatchOperation.GET_ARTIFACTS.equals(operation.getType()) ||
+			   BatchOperation.CREATE_LOCATION.equals(operation.getType());
+	}
+
+	private BatchResult ok(Object entity) {
+
+		return new BatchResult(Response.Status.OK.getStatusCode(), entity);
+	}
+}
@@ -0,0 +1,41 @@
+package org.artifactly.service.rest;
+
+import java.io.Serializable;
+
+/*
+ * Result of one operation of a batch request, with the status and entity the single
+ * request would have answered with
+ */
+public class BatchResult implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private int status = 0;
+	private Object entity = null;
+
+	public BatchResult() {
+
+	}
+
+	public BatchResult(int status, Object entity) {
+
+		this.status = status;
+		this.entity = entity;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public void setStatus(int status) {
+		this.status = status;
+	}
+
+	public Object getEntity() {
+		return entity;
+	}
+
+	public void setEntity(Object entity) {
+		this.entity = entity;
+	}
+}
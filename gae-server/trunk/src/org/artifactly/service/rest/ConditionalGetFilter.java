@@ -0,0 +1,222 @@
+package org.artifactly.service.rest;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+
+import org.artifactly.service.dao.QueryCache;
+import org.artifactly.service.dao.StaleResults;
+
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.sun.jersey.api.uri.UriTemplate;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+import com.sun.jersey.spi.container.ResourceFilter;
+
+/*
+ * Answers conditional GETs from the version of the scope of the query caches the
+ * response depends on, before the resource method runs its query. The scope is
+ * taken from the path parameters, so a write only changes the versions of the
+ * responses that may show it. The ETag is made of the stamps of the scope and the
+ * media type of the representation, the Last-Modified is the latest invalidation of
+ * the scope. Each cache costs one memcache call.
+ * As Last-Modified is only precise to the second, clients should send If-None-Match,
+ * which takes precedence over If-Modified-Since. A response served from stale cached
+ * results gets no validators, but a Warning, so it is not revalidated as current.
+ *
+ * The tag of a response for the signed in user includes the user id, and the response
+ * is private to the user. Results that change without an invalidation, as artifacts
+ * expire, are only validated within a window of the given lifetime.
+ */
+public class ConditionalGetFilter implements ResourceFilter, ContainerRequestFilter, ContainerResponseFilter {
+
+	private static final String TAG_PROPERTY = ConditionalGetFilter.class.getName() + ".tag";
+	private static final String MODIFIED_PROPERTY = ConditionalGetFilter.class.getName() + ".modified";
+	private static final String VARY = "Vary";
+	private static final String COOKIE = "Cookie";
+	private static final String PRIVATE = "private";
+	private static final String WARNING = "Warning";
+	private static final String STALE_WARNING = "110 - \"Response is Stale\"";
+
+	private List<QueryCache> caches = null;
+	private VersionScope scope = null;
+	private UriTemplate template = null;
+	private List<MediaType> mediaTypes = null;
+	private boolean perUser = false;
+	private long lifetime = 0;
+	private String vary = null;
+
+	public ConditionalGetFilter(List<QueryCache> caches, VersionScope scope, UriTemplate template, List<MediaType> mediaTypes, boolean perUser, long lifetime) {
+
+		this.caches = caches;
+		this.scope = scope;
+		this.template = template;
+		this.mediaTypes = mediaTypes;
+		this.perUser = perUser;
+		this.lifetime = lifetime;
+
+		if(1 < mediaTypes.size()) {
+
+			vary = perUser ? HttpHeaders.ACCEPT + ", " + COOKIE : HttpHeaders.ACCEPT;
+		}
+		else if(perUser) {
+
+			vary = COOKIE;
+		}
+	}
+
+	public ContainerRequestFilter getRequestFilter() {
+
+		return this;
+	}
+
+	public ContainerResponseFilter getResponseFilter() {
+
+		return this;
+	}
+
+	public ContainerRequest filter(ContainerRequest request) {
+
+		MediaType mediaType = request.getAcceptableMediaType(mediaTypes);
+
+		if(null == mediaType) {
+
+			// Nothing acceptable is produced, the request is rejected by Jersey
+			return request;
+		}
+
+		Map<String, String> parameters = new HashMap<String, String>();
+		template.match(normalize(request.getPath(true)), parameters);
+		Collection<String> scopes = scope.get(parameters);
+
+		if(null == scopes) {
+
+			// The parameters are rejected by the resource method
+			return request;
+		}
+
+		// The versions are read before the query runs, so a change in between leaves
+		// an older version on the response and the next request gets the change
+		StringBuilder tag = new StringBuilder();
+		Date modified = new Date(0);
+
+		for(QueryCache cache : caches) {
+
+			QueryCache.Version version = cache.getVersion(scopes);
+			tag.append(version.getStamp()).append('-');
+
+			if(version.getModified().after(modified)) {
+
+				modified = version.getModified();
+			}
+		}
+
+		if(0 < lifetime) {
+
+			long windowStart = System.currentTimeMillis() / lifetime * lifetime;
+			tag.append(windowStart).append('-');
+
+			if(windowStart > modified.getTime()) {
+
+				modified = new Date(windowStart);
+			}
+		}
+
+		if(perUser) {
+
+			UserService userService = UserServiceFactory.getUserService();
+			tag.append(userService.isUserLoggedIn() ? userService.getCurrentUser().getUserId() : "anonymous").append('-');
+		}
+
+		tag.append(mediaType.getSubtype());
+
+		EntityTag entityTag = new EntityTag(tag.toString());
+		ResponseBuilder notModified = request.evaluatePreconditions(modified, entityTag);
+
+		if(null != notModified) {
+
+			notModified.lastModified(modified);
+
+			if(perUser) {
+
+				notModified.header(HttpHeaders.CACHE_CONTROL, PRIVATE);
+			}
+
+			if(null != vary) {
+
+				notModified.header(VARY, vary);
+			}
+
+			throw new WebApplicationException(notModified.build());
+		}
+
+		request.getProperties().put(TAG_PROPERTY, entityTag);
+		request.getProperties().put(MODIFIED_PROPERTY, modified);
+
+		return request;
+	}
+
+	/*
+	 * Returns the path with a leading and without empty or trailing slashes, as the
+	 * paths of resources and their methods are joined by slashes
+	 */
+	static String normalize(String path) {
+
+		StringBuilder normalized = new StringBuilder();
+
+		for(String segment : path.split("/")) {
+
+			if(0 < segment.length()) {
+
+				normalized.append('/').append(segment);
+			}
+		}
+
+		return normalized.toString();
+	}
+
+	public ContainerResponse filter(ContainerRequest request, ContainerResponse response) {
+
+		EntityTag entityTag = (EntityTag) request.getProperties().get(TAG_PROPERTY);
+
+		if(null != entityTag && Response.Status.OK.getStatusCode() == response.getStatus()) {
+
+			MultivaluedMap<String, Object> headers = response.getHttpHeaders();
+
+			if(StaleResults.isServed()) {
+
+				headers.putSingle(WARNING, STALE_WARNING);
+				return response;
+			}
+
+			headers.putSingle(HttpHeaders.ETAG, entityTag);
+			headers.putSingle(HttpHeaders.LAST_MODIFIED, request.getProperties().get(MODIFIED_PROPERTY));
+
+			if(null != vary) {
+
+				headers.putSingle(VARY, vary);
+			}
+		}
+
+		if(perUser) {
+
+			// Also a stale or failed response is not shared between users
+			response.getHttpHeaders().putSingle(HttpHeaders.CACHE_CONTROL, PRIVATE);
+		}
+
+		return response;
+	}
+}
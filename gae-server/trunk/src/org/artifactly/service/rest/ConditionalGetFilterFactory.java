@@ -0,0 +1,92 @@
+package org.artifactly.service.rest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.ws.rs.core.MediaType;
+
+import org.artifactly.service.dao.QueryCache;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.sun.jersey.api.model.AbstractMethod;
+import com.sun.jersey.api.model.AbstractResourceMethod;
+import com.sun.jersey.api.model.AbstractSubResourceMethod;
+import com.sun.jersey.api.uri.UriTemplate;
+import com.sun.jersey.spi.container.ResourceFilter;
+import com.sun.jersey.spi.container.ResourceFilterFactory;
+
+/*
+ * Adds a conditional GET filter to the resource methods annotated with @Versioned
+ */
+public class ConditionalGetFilterFactory implements ResourceFilterFactory {
+
+	private Map<String, QueryCache> caches = new HashMap<String, QueryCache>();
+
+	// Artifacts expire without an invalidation, the validators last as long as cached artifact results
+	private Set<QueryCache> expiringCaches = new HashSet<QueryCache>();
+
+	@Inject
+	public ConditionalGetFilterFactory(@Named("artifact") QueryCache artifactCache,
+									   @Named("location") QueryCache locationCache) {
+
+		caches.put("artifact", artifactCache);
+		caches.put("location", locationCache);
+		expiringCaches.add(artifactCache);
+	}
+
+	public List<ResourceFilter> create(AbstractMethod method) {
+
+		Versioned versioned = method.getAnnotation(Versioned.class);
+
+		if(null == versioned || !(method instanceof AbstractResourceMethod)) {
+
+			return null;
+		}
+
+		List<QueryCache> methodCaches = new ArrayList<QueryCache>();
+		long lifetime = 0;
+
+		for(String name : versioned.value()) {
+
+			QueryCache cache = caches.get(name);
+
+			if(null == cache) {
+
+				throw new IllegalArgumentException("Unknown cache " + name + " on " + method.getMethod());
+			}
+
+			methodCaches.add(cache);
+
+			if(expiringCaches.contains(cache) && (0 == lifetime || cache.getTtl() * 1000L < lifetime)) {
+
+				lifetime = cache.getTtl() * 1000L;
+			}
+		}
+
+		List<MediaType> mediaTypes = ((AbstractResourceMethod) method).getSupportedOutputTypes();
+		UriTemplate template = new UriTemplate(ConditionalGetFilter.normalize(path(method)));
+
+		return Collections.<ResourceFilter>singletonList(new ConditionalGetFilter(methodCaches, versioned.scope(), template, mediaTypes, versioned.perUser(), lifetime));
+	}
+
+	/*
+	 * Returns the path template of the method below its resource
+	 */
+	private static String path(AbstractMethod method) {
+
+		String path = method.getResource().getPath().getValue();
+
+		if(method instanceof AbstractSubResourceMethod) {
+
+			path += "/" + ((AbstractSubResourceMethod) method).getPath().getValue();
+		}
+
+		return path;
+	}
+}
@@ -0,0 +1,246 @@
+package org.artifactly.service.rest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.artifactly.service.dao.BulkImport;
+import org.artifactly.service.dao.ImportStatus;
+import org.artifactly.service.pojo.Artifact;
+import org.artifactly.service.pojo.Location;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonProcessingException;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import com.google.appengine.api.datastore.DataTypeUtils;
+import com.google.appengine.api.users.User;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.inject.Inject;
+import com.sun.jersey.spi.resource.Singleton;
+
+/*
+ * Bulk import of artifacts created by the current user. Every row holds latitude,
+ * longitude, name and isPublic, as a JSON object per line or as CSV with an optional
+ * header line. The upload is rejected with the number of the first invalid line,
+ * otherwise the rows are imported by the task queue and the returned status is
+ * polled for progress.
+ */
+@Singleton
+@Path("/import/")
+public class ImportResource {
+
+	public static final String NDJSON = "application/x-ndjson";
+	public static final String CSV = "text/csv";
+
+	private static final String CSV_HEADER = "latitude";
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	private BulkImport bulkImport = null;
+
+	@Inject
+	public ImportResource(BulkImport bulkImport) {
+
+		this.bulkImport = bulkImport;
+	}
+
+	@POST
+	@Consumes(NDJSON)
+	@Produces("application/json")
+	public ImportStatus importNdjson(InputStream input) throws IOException {
+
+		return start(input, false);
+	}
+
+	@POST
+	@Consumes(CSV)
+	@Produces("application/json")
+	public ImportStatus importCsv(InputStream input) throws IOException {
+
+		return start(input, true);
+	}
+
+	@GET
+	@Path("/{id}")
+	@Produces("application/json")
+	public ImportStatus getStatus(@PathParam("id") long id) {
+
+		ImportStatus status = bulkImport.getStatus(id, getCreator());
+
+		if(null == status) {
+
+			throw new WebApplicationException(Response.Status.NOT_FOUND);
+		}
+
+		return status;
+	}
+
+	private ImportStatus start(InputStream input, boolean csv) throws IOException {
+
+		User creator = getCreator();
+		Date creationDate = new Date();
+
+		List<Location> locations = new ArrayList<Location>();
+		List<Artifact> artifacts = new ArrayList<Artifact>();
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+		String line = null;
+		int lineNumber = 0;
+
+		while(null != (line = reader.readLine())) {
+
+			lineNumber++;
+
+			if(0 == line.trim().length() || (csv && 1 == lineNumber && line.trim().startsWith(CSV_HEADER))) {
+
+				continue;
+			}
+
+			if(BulkImport.MAX_ROWS == artifacts.size()) {
+
+				throw badRequest("More than " + BulkImport.MAX_ROWS + " rows");
+			}
+
+			try {
+
+				String[] fields = csv ? parseCsv(line) : parseJson(line);
+
+				double latitude = Double.parseDouble(fields[0]);
+				double longitude = Double.parseDouble(fields[1]);
+				String name = fields[2];
+
+				if(Math.abs(latitude) > 90.0 || Math.abs(longitude) > 180.0 || null == name || 0 == name.length() || name.length() > DataTypeUtils.MAX_STRING_PROPERTY_LENGTH) {
+
+					throw new IllegalArgumentException("invalid row");
+				}
+
+				locations.add(new Location(latitude, longitude));
+				artifacts.add(new Artifact(creator, name, creationDate, Boolean.parseBoolean(fields[3])));
+
+			} catch (JsonProcessingException e) {
+
+				throw badRequest("Line " + lineNumber + ": " + e.getMessage());
+
+			} catch (RuntimeException e) {
+
+				throw badRequest("Line " + lineNumber + ": " + e.getMessage());
+			}
+		}
+
+		if(artifacts.isEmpty()) {
+
+			throw badRequest("No rows");
+		}
+
+		return bulkImport.start(creator, locations, artifacts);
+	}
+
+	/*
+	 * Returns latitude, longitude, name and isPublic of a JSON object
+	 */
+	private String[] parseJson(String line) throws IOException {
+
+		JsonNode row = objectMapper.readTree(line);
+
+		if(!row.path("latitude").isNumber() || !row.path("longitude").isNumber() || !row.path("name").isTextual()) {
+
+			throw new IllegalArgumentException("latitude, longitude and name are required");
+		}
+
+		return new String[] { row.get("latitude").getValueAsText(),
+							  row.get("longitude").getValueAsText(),
+							  row.get("name").getTextValue(),
+							  String.valueOf(row.path("isPublic").getBooleanValue()) };
+	}
+
+	/*
+	 * Returns the fields of a CSV line, a field in double quotes may contain commas and
+	 * doubled quotes. A missing isPublic is false.
+	 */
+	private String[] parseCsv(String line) {
+
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+
+		for(int index = 0; index < line.length(); index++) {
+
+			char character = line.charAt(index);
+
+			if(quoted) {
+
+				if('"' == character && index + 1 < line.length() && '"' == line.charAt(index + 1)) {
+
+					field.append('"');
+					index++;
+				}
+				else if('"' == character) {
+
+					quoted = false;
+				}
+				else {
+
+					field.append(character);
+				}
+			}
+			else if('"' == character) {
+
+				quoted = true;
+			}
+			else if(',' == character) {
+
+				fields.add(field.toString().trim());
+				field.setLength(0);
+			}
+			else {
+
+				field.append(character);
+			}
+		}
+
+		fields.add(field.toString().trim());
+
+		if(fields.size() < 3 || fields.size() > 4) {
+
+			throw new IllegalArgumentException("latitude, longitude, name and isPublic expected");
+		}
+
+		if(3 == fields.size()) {
+
+			fields.add("false");
+		}
+
+		return fields.toArray(new String[fields.size()]);
+	}
+
+	private User getCreator() {
+
+		UserService userService = UserServiceFactory.getUserService();
+
+		if(!userService.isUserLoggedIn()) {
+
+			throw new WebApplicationException(Response.Status.UNAUTHORIZED);
+		}
+
+		return userService.getCurrentUser();
+	}
+
+	private WebApplicationException badRequest(String message) {
+
+		return new WebApplicationException(Response.status(Response.Status.BAD_REQUEST).entity(message).type(MediaType.TEXT_PLAIN).build());
+	}
+}
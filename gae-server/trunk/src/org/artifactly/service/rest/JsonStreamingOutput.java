@@ -0,0 +1,45 @@
+package org.artifactly.service.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+
+/*
+ * Writes the results as a JSON array while they are being iterated, instead of
+ * mapping a complete list after all results have been loaded. The results are
+ * written with the ObjectMapper of the JSON provider.
+ */
+public class JsonStreamingOutput<T> implements StreamingOutput {
+
+	private ObjectMapper objectMapper = null;
+	private Iterable<T> results = null;
+
+	public JsonStreamingOutput(ObjectMapper objectMapper, Iterable<T> results) {
+
+		this.objectMapper = objectMapper;
+		this.results = results;
+	}
+
+	public void write(OutputStream output) throws IOException, WebApplicationException {
+
+		JsonGenerator generator = objectMapper.getJsonFactory().createJsonGenerator(output, JsonEncoding.UTF8);
+
+		generator.writeStartArray();
+
+		for(T result : results) {
+
+			objectMapper.writeValue(generator, result);
+		}
+
+		generator.writeEndArray();
+
+		// The response stream is closed by the container
+		generator.flush();
+	}
+}
@@ -7,34 +7,45 @@ import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.artifactly.service.dao.LocationService;
 import org.artifactly.service.dao.PageableResults;
-import org.artifactly.service.ioc.ServiceModule;
+import org.artifactly.service.geo.GeoUtils;
 import org.artifactly.service.pojo.Location;
 
-import com.google.inject.Guice;
-import com.google.inject.Injector;
+import com.google.inject.Inject;
 import com.sun.jersey.spi.resource.Singleton;
 
 @Singleton
 @Path("/location/")
 public class LocationResource {
 
-	private Injector injector = Guice.createInjector(new ServiceModule());
-	private LocationService locationService = injector.getInstance(LocationService.class);
+	private LocationService locationService = null;
+	private ObjectMapperResolver objectMapperResolver = null;
+	
+	@Inject
+	public LocationResource(LocationService locationService, ObjectMapperResolver objectMapperResolver) {
+		
+		this.locationService = locationService;
+		this.objectMapperResolver = objectMapperResolver;
+	}
 	
 	@GET
+	@Versioned("location")
 	@Path("/all/")
 	@Produces("application/json")
-	public List<Location> getLocations() {
+	public StreamingOutput getLocations() {
 		
-		return locationService.getAll();
+		return new JsonStreamingOutput<Location>(objectMapperResolver.getContext(Location.class), locationService.iterateAll());
 	}
 	
 	@GET
+	@Versioned("location")
 	@Path("/page/{offset}/{limit}/")
-	@Produces("application/json")
+	@Produces({ "application/json", ProtobufEncoding.MEDIA_TYPE })
 	public PageableResults<Location> getLocations(@PathParam("offset") String offset,
 												  @PathParam("limit")  long limit) {
 
@@ -42,6 +53,7 @@ public class LocationResource {
 	}
 	
 	@GET
+	@Versioned(value = "location", scope = VersionScope.COORDINATE)
 	@Path("/{latitude}/{longitude}")
 	@Produces("application/json")
 	public Location getLocations(@PathParam("latitude") double latitude,
@@ -50,6 +62,22 @@ public class LocationResource {
 		return locationService.get(latitude, longitude);
 	}
 	
+	@GET
+	@Versioned(value = "location", scope = VersionScope.RADIUS)
+	@Path("/{latitude}/{longitude}/{radius}")
+	@Produces({ "application/json", ProtobufEncoding.MEDIA_TYPE })
+	public List<Location> getLocations(@PathParam("latitude") double latitude,
+									   @PathParam("longitude") double longitude,
+									   @PathParam("radius") double radius) {
+
+		if(!GeoUtils.isValid(latitude, longitude, radius)) {
+
+			throw new WebApplicationException(Response.Status.BAD_REQUEST);
+		}
+
+		return locationService.get(latitude, longitude, radius);
+	}
+	
 	@PUT
 	@Path("/{latitude}/{longitude}")
 	@Produces("application/json")
@@ -0,0 +1,36 @@
+package org.artifactly.service.rest;
+
+import java.util.Map;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import org.artifactly.service.metrics.EndpointMetrics;
+import org.artifactly.service.metrics.Metrics;
+
+import com.google.inject.Inject;
+import com.sun.jersey.spi.resource.Singleton;
+
+/*
+ * Request statistics of this instance by resource method
+ */
+@Singleton
+@Path("/metrics")
+public class MetricsResource {
+
+	private Metrics metrics = null;
+
+	@Inject
+	public MetricsResource(Metrics metrics) {
+
+		this.metrics = metrics;
+	}
+
+	@GET
+	@Produces("application/json")
+	public Map<String, EndpointMetrics> getMetrics() {
+
+		return metrics.getAll();
+	}
+}
@@ -0,0 +1,22 @@
+package org.artifactly.service.rest;
+
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Provider;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+/*
+ * Provides the one ObjectMapper of the application. The JSON provider of the POJO
+ * mapping feature looks it up through this resolver, and the streamed listings
+ * write with it as well, so both produce the same JSON.
+ */
+@Provider
+public class ObjectMapperResolver implements ContextResolver<ObjectMapper> {
+
+	private ObjectMapper objectMapper = new ObjectMapper();
+
+	public ObjectMapper getContext(Class<?> type) {
+
+		return objectMapper;
+	}
+}
@@ -0,0 +1,305 @@
+package org.artifactly.service.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import org.artifactly.service.dao.Changes;
+import org.artifactly.service.dao.PageableResults;
+import org.artifactly.service.dao.Tombstone;
+import org.artifactly.service.pojo.Artifact;
+import org.artifactly.service.pojo.Location;
+
+import com.google.appengine.api.datastore.Key;
+import com.google.protobuf.CodedOutputStream;
+
+/*
+ * Encodes the payloads in the protocol buffer format described by artifactly.proto.
+ * The messages are written field by field straight to the stream, the size of a
+ * nested message is computed beforehand as its length precedes it.
+ */
+public final class ProtobufEncoding {
+
+	public static final String MEDIA_TYPE = "application/x-protobuf";
+
+	// Wire type of strings and nested messages
+	private static final int LENGTH_DELIMITED = 2;
+
+	private ProtobufEncoding() {
+
+	}
+
+	/*
+	 * Returns whether values of the type are encoded: pages and lists of artifacts or
+	 * locations, and changes
+	 */
+	public static boolean isSupported(Class<?> type, Type genericType) {
+
+		if(Changes.class.isAssignableFrom(type)) {
+
+			return true;
+		}
+
+		if(!PageableResults.class.isAssignableFrom(type) && !List.class.isAssignableFrom(type)) {
+
+			return false;
+		}
+
+		if(!(genericType instanceof ParameterizedType)) {
+
+			return false;
+		}
+
+		Type elementType = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+		return Artifact.class.equals(elementType) || Location.class.equals(elementType);
+	}
+
+	public static void write(Object value, OutputStream output) throws IOException {
+
+		CodedOutputStream codedOutput = CodedOutputStream.newInstance(output);
+
+		if(value instanceof Changes) {
+
+			Changes changes = (Changes) value;
+			writeElements(codedOutput, changes.getArtifacts());
+			writeElements(codedOutput, changes.getLocations());
+
+			for(Tombstone tombstone : changes.getDeleted()) {
+
+				codedOutput.writeTag(3, LENGTH_DELIMITED);
+				codedOutput.writeRawVarint32(size(tombstone));
+				write(codedOutput, tombstone);
+			}
+
+			writeString(codedOutput, 4, changes.getToken());
+		}
+		else if(value instanceof PageableResults<?>) {
+
+			PageableResults<?> pageableResults = (PageableResults<?>) value;
+			writeElements(codedOutput, pageableResults.getResults());
+			writeString(codedOutput, 3, pageableResults.getOffset());
+		}
+		else {
+
+			writeElements(codedOutput, (List<?>) value);
+		}
+
+		codedOutput.flush();
+	}
+
+	/*
+	 * Writes artifacts as field 1 and locations as field 2, which both the page and the
+	 * changes messages use
+	 */
+	private static void writeElements(CodedOutputStream output, List<?> elements) throws IOException {
+
+		if(null == elements) {
+
+			return;
+		}
+
+		for(Object element : elements) {
+
+			if(element instanceof Artifact) {
+
+				output.writeTag(1, LENGTH_DELIMITED);
+				output.writeRawVarint32(size((Artifact) element));
+				write(output, (Artifact) element);
+			}
+			else {
+
+				output.writeTag(2, LENGTH_DELIMITED);
+				output.writeRawVarint32(size((Location) element));
+				write(output, (Location) element);
+			}
+		}
+	}
+
+	private static void write(CodedOutputStream output, Artifact artifact) throws IOException {
+
+		writeKey(output, 1, artifact.getKey());
+		writeString(output, 2, artifact.getName());
+
+		if(null != artifact.getCreator()) {
+
+			writeString(output, 3, artifact.getCreator().getEmail());
+		}
+
+		if(null != artifact.getCreationDate()) {
+
+			output.writeInt64(4, artifact.getCreationDate().getTime());
+		}
+
+		if(null != artifact.getExpirationDate()) {
+
+			output.writeInt64(5, artifact.getExpirationDate().getTime());
+		}
+
+		if(null != artifact.getIsPublic()) {
+
+			output.writeBool(6, artifact.getIsPublic());
+		}
+
+		if(null != artifact.getLocations()) {
+
+			for(Key locationKey : artifact.getLocations()) {
+
+				writeKey(output, 7, locationKey);
+			}
+		}
+
+		if(null != artifact.getVersion()) {
+
+			output.writeInt64(8, artifact.getVersion());
+		}
+	}
+
+	private static int size(Artifact artifact) {
+
+		int size = keySize(1, artifact.getKey()) + stringSize(2, artifact.getName());
+
+		if(null != artifact.getCreator()) {
+
+			size += stringSize(3, artifact.getCreator().getEmail());
+		}
+
+		if(null != artifact.getCreationDate()) {
+
+			size += CodedOutputStream.computeInt64Size(4, artifact.getCreationDate().getTime());
+		}
+
+		if(null != artifact.getExpirationDate()) {
+
+			size += CodedOutputStream.computeInt64Size(5, artifact.getExpirationDate().getTime());
+		}
+
+		if(null != artifact.getIsPublic()) {
+
+			size += CodedOutputStream.computeBoolSize(6, artifact.getIsPublic());
+		}
+
+		if(null != artifact.getLocations()) {
+
+			for(Key locationKey : artifact.getLocations()) {
+
+				size += keySize(7, locationKey);
+			}
+		}
+
+		if(null != artifact.getVersion()) {
+
+			size += CodedOutputStream.computeInt64Size(8, artifact.getVersion());
+		}
+
+		return size;
+	}
+
+	private static void write(CodedOutputStream output, Location location) throws IOException {
+
+		writeKey(output, 1, location.getKey());
+		output.writeDouble(2, location.getLatitude());
+		output.writeDouble(3, location.getLongitude());
+
+		if(null != location.getVersion()) {
+
+			output.writeInt64(4, location.getVersion());
+		}
+	}
+
+	private static int size(Location location) {
+
+		int size = keySize(1, location.getKey()) +
+				   CodedOutputStream.computeDoubleSize(2, location.getLatitude()) +
+				   CodedOutputStream.computeDoubleSize(3, location.getLongitude());
+
+		if(null != location.getVersion()) {
+
+			size += CodedOutputStream.computeInt64Size(4, location.getVersion());
+		}
+
+		return size;
+	}
+
+	private static void write(CodedOutputStream output, Tombstone tombstone) throws IOException {
+
+		writeKey(output, 1, tombstone.getKey());
+
+		if(null != tombstone.getVersion()) {
+
+			output.writeInt64(2, tombstone.getVersion());
+		}
+	}
+
+	private static int size(Tombstone tombstone) {
+
+		int size = keySize(1, tombstone.getKey());
+
+		if(null != tombstone.getVersion()) {
+
+			size += CodedOutputStream.computeInt64Size(2, tombstone.getVersion());
+		}
+
+		return size;
+	}
+
+	private static void writeKey(CodedOutputStream output, int field, Key key) throws IOException {
+
+		if(null == key) {
+
+			return;
+		}
+
+		output.writeTag(field, LENGTH_DELIMITED);
+		output.writeRawVarint32(size(key));
+		writeString(output, 1, key.getKind());
+
+		if(0 != key.getId()) {
+
+			output.writeInt64(2, key.getId());
+		}
+
+		writeString(output, 3, key.getName());
+		writeKey(output, 4, key.getParent());
+	}
+
+	private static int size(Key key) {
+
+		int size = stringSize(1, key.getKind()) + stringSize(3, key.getName()) + keySize(4, key.getParent());
+
+		if(0 != key.getId()) {
+
+			size += CodedOutputStream.computeInt64Size(2, key.getId());
+		}
+
+		return size;
+	}
+
+	/*
+	 * Returns the size of the key as a field, including its tag and length
+	 */
+	private static int keySize(int field, Key key) {
+
+		if(null == key) {
+
+			return 0;
+		}
+
+		int size = size(key);
+		return CodedOutputStream.computeTagSize(field) + CodedOutputStream.computeRawVarint32Size(size) + size;
+	}
+
+	private static void writeString(CodedOutputStream output, int field, String value) throws IOException {
+
+		if(null != value) {
+
+			output.writeString(field, value);
+		}
+	}
+
+	private static int stringSize(int field, String value) {
+
+		return null == value ? 0 : CodedOutputStream.computeStringSize(field, value);
+	}
+}
@@ -0,0 +1,44 @@
+package org.artifactly.service.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+/*
+ * Writes the payloads in the compact protocol buffer encoding for clients that
+ * accept application/x-protobuf. JSON stays the default representation.
+ */
+@Provider
+@Produces(ProtobufEncoding.MEDIA_TYPE)
+public class ProtobufMessageBodyWriter implements MessageBodyWriter<Object> {
+
+	public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+
+		return ProtobufEncoding.isSupported(type, genericType);
+	}
+
+	public long getSize(Object value, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+
+		// The length is not known before the payload is encoded
+		return -1;
+	}
+
+	public void writeTo(Object value,
+						Class<?> type,
+						Type genericType,
+						Annotation[] annotations,
+						MediaType mediaType,
+						MultivaluedMap<String, Object> httpHeaders,
+						OutputStream output) throws IOException, WebApplicationException {
+
+		ProtobufEncoding.write(value, output);
+	}
+}
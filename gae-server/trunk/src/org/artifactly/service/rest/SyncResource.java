@@ -0,0 +1,55 @@
+package org.artifactly.service.rest;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+import org.artifactly.service.dao.ChangeLog;
+import org.artifactly.service.dao.Changes;
+
+import com.google.inject.Inject;
+import com.sun.jersey.spi.resource.Singleton;
+
+/*
+ * Delta synchronization for clients keeping a copy of the artifacts and locations.
+ * A client starts with token 0 and passes the returned token with the next request,
+ * until the changes are empty.
+ */
+@Singleton
+@Path("/sync/")
+public class SyncResource {
+
+	private static final int MAX_LIMIT = 1000;
+
+	private ChangeLog changeLog = null;
+
+	@Inject
+	public SyncResource(ChangeLog changeLog) {
+
+		this.changeLog = changeLog;
+	}
+
+	@GET
+	@Path("/changes/{token}/{limit}")
+	@Produces({ "application/json", ProtobufEncoding.MEDIA_TYPE })
+	public Changes getChanges(@PathParam("token") String token,
+							  @PathParam("limit") int limit) {
+
+		if(limit < 1 || limit > MAX_LIMIT) {
+
+			throw new WebApplicationException(Response.Status.BAD_REQUEST);
+		}
+
+		try {
+
+			return changeLog.get(token, limit);
+
+		} catch (NumberFormatException e) {
+
+			throw new WebApplicationException(Response.Status.BAD_REQUEST);
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package org.artifactly.service.rest;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import org.artifactly.service.dao.CacheScopes;
+import org.artifactly.service.dao.ViewportQuery;
+import org.artifactly.service.geo.GeoHash;
+import org.artifactly.service.geo.GeoUtils;
+
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+
+/*
+ * The cache scopes a versioned response depends on, taken from the path parameters
+ * of its request. They are the scopes the caching services store its results under,
+ * so the version of a response only changes with a write it may show. Returns null
+ * for parameters the resource method rejects.
+ */
+public enum VersionScope {
+
+	// Every write, for pages of all results and lookups of unbounded extent
+	ALL {
+
+		public Collection<String> get(Map<String, String> parameters) {
+
+			return Collections.singleton(CacheScopes.ALL);
+		}
+	},
+
+	// The artifacts created by the signed in user
+	CREATOR {
+
+		public Collection<String> get(Map<String, String> parameters) {
+
+			UserService userService = UserServiceFactory.getUserService();
+
+			return userService.isUserLoggedIn() ? Collections.singleton(CacheScopes.creator(userService.getCurrentUser().getUserId())) : null;
+		}
+	},
+
+	// The location at {latitude}/{longitude}
+	COORDINATE {
+
+		public Collection<String> get(Map<String, String> parameters) {
+
+			double[] coordinate = numbers(parameters, "latitude", "longitude");
+
+			if(null == coordinate || Math.abs(coordinate[0]) > 90.0 || Math.abs(coordinate[1]) > 180.0) {
+
+				return null;
+			}
+
+			return Collections.singleton(CacheScopes.location(coordinate[0], coordinate[1]));
+		}
+	},
+
+	// The cells covering {radius} meters around {latitude}/{longitude}
+	RADIUS {
+
+		public Collection<String> get(Map<String, String> parameters) {
+
+			double[] circle = circle(parameters);
+
+			return null == circle ? null : CacheScopes.cells(GeoHash.cover(circle[0], circle[1], circle[2]));
+		}
+	},
+
+	// The cells covering {radius} meters around the grid center of {latitude}/{longitude}
+	GRID_RADIUS {
+
+		public Collection<String> get(Map<String, String> parameters) {
+
+			double[] circle = circle(parameters);
+
+			return null == circle ? null : CacheScopes.gridRadius(circle[0], circle[1], circle[2]);
+		}
+	},
+
+	// The grid cells of the viewport at {zoom}
+	VIEWPORT {
+
+		public Collection<String> get(Map<String, String> parameters) {
+
+			double[] viewport = numbers(parameters, "minLatitude", "minLongitude", "maxLatitude", "maxLongitude", "zoom");
+
+			if(null == viewport || viewport[0] > viewport[2] || viewport[0] < -90.0 || viewport[2] > 90.0 ||
+			   Math.abs(viewport[1]) > 180.0 || Math.abs(viewport[3]) > 180.0 ||
+			   viewport[4] < 0 || viewport[4] > ViewportQuery.MAX_ZOOM) {
+
+				return null;
+			}
+
+			return CacheScopes.cells(ViewportQuery.cells(viewport[0], viewport[1], viewport[2], viewport[3], (int) viewport[4]));
+		}
+	};
+
+	public abstract Collection<String> get(Map<String, String> parameters);
+
+	/*
+	 * Returns {latitude}, {longitude} and {radius}, or null when they are no valid circle
+	 */
+	private static double[] circle(Map<String, String> parameters) {
+
+		double[] circle = numbers(parameters, "latitude", "longitude", "radius");
+
+		return null == circle || !GeoUtils.isValid(circle[0], circle[1], circle[2]) ? null : circle;
+	}
+
+	/*
+	 * Returns the values of the parameters, or null when one is missing or no number
+	 */
+	private static double[] numbers(Map<String, String> parameters, String... names) {
+
+		double[] numbers = new double[names.length];
+
+		for(int i = 0; i < names.length; i++) {
+
+			String value = parameters.get(names[i]);
+
+			if(null == value) {
+
+				return null;
+			}
+
+			try {
+
+				numbers[i] = Double.parseDouble(value);
+
+			} catch (NumberFormatException e) {
+
+				return null;
+			}
+		}
+
+		return numbers;
+	}
+}
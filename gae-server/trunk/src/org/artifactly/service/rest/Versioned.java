@@ -0,0 +1,23 @@
+package org.artifactly.service.rest;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/*
+ * Marks a resource method whose response only changes when the scope of the named
+ * query caches is invalidated, which makes it conditional on the version of the
+ * scope. A response for the signed in user is marked perUser, so it is only
+ * validated for that user.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Versioned {
+
+	String[] value();
+
+	VersionScope scope() default VersionScope.ALL;
+
+	boolean perUser() default false;
+}
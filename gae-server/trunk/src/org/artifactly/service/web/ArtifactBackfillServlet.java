@@ -0,0 +1,41 @@
+package org.artifactly.service.web;
+
+import org.artifactly.service.dao.Backfill;
+import org.artifactly.service.dao.PageableResults;
+import org.artifactly.service.dao.QueryCache;
+
+import com.google.appengine.api.datastore.Key;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/*
+ * Stores the expiration and version on the artifacts written before they were
+ * indexed, started once by an administrator
+ */
+public class ArtifactBackfillServlet extends BatchTaskServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	private Backfill backfill = null;
+	private QueryCache artifactCache = null;
+
+	@Inject
+	public ArtifactBackfillServlet(Backfill backfill, @Named("artifact") QueryCache artifactCache) {
+
+		this.backfill = backfill;
+		this.artifactCache = artifactCache;
+	}
+
+	@Override
+	protected PageableResults<Key> run(String offset) {
+
+		PageableResults<Key> pageableResults = backfill.artifacts(offset);
+
+		if(!pageableResults.getResults().isEmpty()) {
+
+			artifactCache.invalidate();
+		}
+
+		return pageableResults;
+	}
+}
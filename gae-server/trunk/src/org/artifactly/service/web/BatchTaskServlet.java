@@ -0,0 +1,52 @@
+package org.artifactly.service.web;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.artifactly.service.dao.PageableResults;
+
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+
+/*
+ * Runs a datastore job one batch per request. Cron starts the job with a GET, every
+ * batch enqueues a task for the next one with the offset it stopped at, so the job
+ * is resumed from there when a request fails and is retried by the task queue.
+ */
+public abstract class BatchTaskServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+	private static final Logger logger = Logger.getLogger(BatchTaskServlet.class.getName());
+
+	private static final String OFFSET = "offset";
+
+	protected abstract PageableResults<Key> run(String offset);
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+		doPost(request, response);
+	}
+
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+		PageableResults<Key> pageableResults = run(request.getParameter(OFFSET));
+		String offset = pageableResults.getOffset();
+
+		logger.info(request.getServletPath() + " processed " + pageableResults.getResults().size() + " entities" + (null == offset ? ", done" : ""));
+
+		if(null != offset) {
+
+			QueueFactory.getDefaultQueue().add(TaskOptions.Builder.withUrl(request.getServletPath()).param(OFFSET, offset));
+		}
+
+		response.setStatus(HttpServletResponse.SC_OK);
+	}
+}
@@ -0,0 +1,40 @@
+package org.artifactly.service.web;
+
+import org.artifactly.service.dao.ExpiredArtifactSweeper;
+import org.artifactly.service.dao.PageableResults;
+import org.artifactly.service.dao.QueryCache;
+
+import com.google.appengine.api.datastore.Key;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/*
+ * Deletes the expired artifacts, started by cron
+ */
+public class ExpiredArtifactSweepServlet extends BatchTaskServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	private ExpiredArtifactSweeper sweeper = null;
+	private QueryCache artifactCache = null;
+
+	@Inject
+	public ExpiredArtifactSweepServlet(ExpiredArtifactSweeper sweeper, @Named("artifact") QueryCache artifactCache) {
+
+		this.sweeper = sweeper;
+		this.artifactCache = artifactCache;
+	}
+
+	@Override
+	protected PageableResults<Key> run(String offset) {
+
+		PageableResults<Key> pageableResults = sweeper.sweep(offset);
+
+		if(!pageableResults.getResults().isEmpty()) {
+
+			artifactCache.invalidate();
+		}
+
+		return pageableResults;
+	}
+}
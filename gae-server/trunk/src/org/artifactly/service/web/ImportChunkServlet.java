@@ -0,0 +1,58 @@
+package org.artifactly.service.web;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.artifactly.service.dao.BulkImport;
+import org.artifactly.service.dao.QueryCache;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/*
+ * Imports one chunk of a bulk import, run by the import queue. A failed chunk is
+ * retried by the queue and writes the same entities again.
+ */
+public class ImportChunkServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+	private static final Logger logger = Logger.getLogger(ImportChunkServlet.class.getName());
+
+	private BulkImport bulkImport = null;
+	private QueryCache artifactCache = null;
+	private QueryCache locationCache = null;
+
+	@Inject
+	public ImportChunkServlet(BulkImport bulkImport,
+							  @Named("artifact") QueryCache artifactCache,
+							  @Named("location") QueryCache locationCache) {
+
+		this.bulkImport = bulkImport;
+		this.artifactCache = artifactCache;
+		this.locationCache = locationCache;
+	}
+
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+		long job = Long.parseLong(request.getParameter(BulkImport.JOB));
+		int chunk = Integer.parseInt(request.getParameter(BulkImport.CHUNK));
+
+		int rows = bulkImport.importChunk(job, chunk);
+
+		if(0 < rows) {
+
+			// Locations may have been created as well
+			artifactCache.invalidate();
+			locationCache.invalidate();
+		}
+
+		logger.info(request.getServletPath() + " imported " + rows + " rows of chunk " + chunk + " of import " + job);
+		response.setStatus(HttpServletResponse.SC_OK);
+	}
+}
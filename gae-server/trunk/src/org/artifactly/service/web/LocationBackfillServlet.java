@@ -0,0 +1,41 @@
+package org.artifactly.service.web;
+
+import org.artifactly.service.dao.Backfill;
+import org.artifactly.service.dao.PageableResults;
+import org.artifactly.service.dao.QueryCache;
+
+import com.google.appengine.api.datastore.Key;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/*
+ * Stores the version on the locations written before it was indexed, started once
+ * by an administrator
+ */
+public class LocationBackfillServlet extends BatchTaskServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	private Backfill backfill = null;
+	private QueryCache locationCache = null;
+
+	@Inject
+	public LocationBackfillServlet(Backfill backfill, @Named("location") QueryCache locationCache) {
+
+		this.backfill = backfill;
+		this.locationCache = locationCache;
+	}
+
+	@Override
+	protected PageableResults<Key> run(String offset) {
+
+		PageableResults<Key> pageableResults = backfill.locations(offset);
+
+		if(!pageableResults.getResults().isEmpty()) {
+
+			locationCache.invalidate();
+		}
+
+		return pageableResults;
+	}
+}
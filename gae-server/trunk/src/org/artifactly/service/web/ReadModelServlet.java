@@ -0,0 +1,71 @@
+package org.artifactly.service.web;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.artifactly.service.dao.ArtifactWriter;
+import org.artifactly.service.dao.CacheScopes;
+import org.artifactly.service.dao.EntityCache;
+import org.artifactly.service.dao.EntityMapper;
+import org.artifactly.service.dao.QueryCache;
+import org.artifactly.service.pojo.Location;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/*
+ * Adds a created artifact to the read model of its location, run by the task enqueued
+ * with the artifact. Usually the request creating the artifact added it already and
+ * the task has nothing to do. A busy shard fails the task, which is retried by the queue.
+ */
+public class ReadModelServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+	private static final Logger logger = Logger.getLogger(ReadModelServlet.class.getName());
+
+	private ArtifactWriter artifactWriter = null;
+	private QueryCache artifactCache = null;
+	private EntityCache entityCache = null;
+
+	@Inject
+	public ReadModelServlet(ArtifactWriter artifactWriter, @Named("artifact") QueryCache artifactCache, EntityCache entityCache) {
+
+		this.artifactWriter = artifactWriter;
+		this.artifactCache = artifactCache;
+		this.entityCache = entityCache;
+	}
+
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+		Key artifactKey = KeyFactory.stringToKey(request.getParameter(ArtifactWriter.ARTIFACT));
+		Key locationKey = KeyFactory.stringToKey(request.getParameter(ArtifactWriter.LOCATION));
+
+		if(artifactWriter.addToReadModel(artifactKey, locationKey)) {
+
+			// Results cached at the location while the artifact was missing are dropped
+			Entity entity = entityCache.get(locationKey);
+
+			if(null == entity) {
+
+				artifactCache.invalidate();
+			}
+			else {
+
+				Location location = EntityMapper.toLocation(entity);
+				artifactCache.invalidate(CacheScopes.written(location.getLatitude(), location.getLongitude()));
+			}
+			logger.info(request.getServletPath() + " added artifact " + artifactKey + " to location " + locationKey);
+		}
+
+		response.setStatus(HttpServletResponse.SC_OK);
+	}
+}
@@ -0,0 +1,48 @@
+package org.artifactly.service.web;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.artifactly.service.dao.ArtifactService;
+import org.artifactly.service.dao.LocationService;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/*
+ * Handles the App Engine warmup request. The injector and Jersey are already
+ * initialized when this is called, the remaining cold-start cost is the JDO
+ * metadata of the persistent classes which is loaded by the first query.
+ */
+public class WarmupServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+	private static final Logger logger = Logger.getLogger(WarmupServlet.class.getName());
+
+	private ArtifactService artifactService = null;
+	private LocationService locationService = null;
+
+	@Inject
+	public WarmupServlet(@Named("backing") ArtifactService artifactService,
+						 @Named("backing") LocationService locationService) {
+
+		this.artifactService = artifactService;
+		this.locationService = locationService;
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+		long start = System.currentTimeMillis();
+		artifactService.get(null, 1);
+		locationService.get("0", 1);
+		logger.info("Warmup queries completed in " + (System.currentTimeMillis() - start) + " ms");
+
+		response.setStatus(HttpServletResponse.SC_OK);
+	}
+}